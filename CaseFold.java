@@ -0,0 +1,75 @@
+// package org.javacogs;
+
+/**
+ * CaseFold maps characters to a single case for case-insensitive matching,
+ * through lookup tables. Two characters match ignoring case if they fold to
+ * the same character.
+ * <br><br>
+ * The folding is Unicode simple case folding as the JDK provides it:
+ * Character.toLowerCase(Character.toUpperCase(c)), the same comparison that
+ * String.equalsIgnoreCase() makes. One character always folds to one
+ * character, so folded text has the same length and indexes as the
+ * original. For example, the Kelvin sign folds to 'k' and final sigma to
+ * sigma. Characters outside the Basic Multilingual Plane are not folded.
+ * <br><br>
+ * ASCII characters are looked up in a 128-entry table, which stays in the
+ * cache; other characters use a table for the whole char range.
+ */
+public final class CaseFold {
+   private static final char[] ASCII = new char[128];
+   private static final char[] ALL = new char[65536];
+
+   static {
+      for (int c = 0; c < ALL.length; c ++) {
+         ALL[c] = Character.toLowerCase(Character.toUpperCase((char) c));
+      }
+
+      System.arraycopy(ALL, 0, ASCII, 0, ASCII.length);
+   }
+
+   /**
+    * Private constructor, so class cannot be instantiated.
+    */
+   private CaseFold() {
+   }
+
+   /**
+    * Fold a character.
+    *
+    * @param c Character to fold.
+    *
+    * @return Folded character.
+    */
+   public static char fold(char c) {
+      return (c < 0x80) ? ASCII[c] : ALL[c];
+   }
+
+   /**
+    * Fold a string.
+    *
+    * @param str String to fold.
+    *
+    * @return Folded string, the same length as str.
+    */
+   public static String fold(String str) {
+      char[] arr = str.toCharArray();
+
+      for (int i = 0; i < arr.length; i ++) {
+         arr[i] = fold(arr[i]);
+      }
+
+      return new String(arr);
+   }
+
+   /**
+    * Test whether two characters are equal, ignoring case.
+    *
+    * @param a First character.
+    * @param b Second character.
+    *
+    * @return True if a and b fold to the same character.
+    */
+   public static boolean equals(char a, char b) {
+      return (a == b) || (fold(a) == fold(b));
+   }
+}
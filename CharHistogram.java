@@ -0,0 +1,357 @@
+// package org.javacogs;
+
+import java.nio.*;
+import java.util.concurrent.*;
+
+/**
+ * CharHistogram counts how often each character occurs in a text in a single
+ * pass. A histogram has one slot per character from 0 to 255, plus the slot
+ * OTHER for all characters above 255. Byte input is read as Latin-1.
+ * <br><br>
+ * The count() methods work on one thread and return int counts. The
+ * parallelCount() methods split large inputs across the common fork/join
+ * pool and return long counts, so inputs of several gigabytes (such as a
+ * mapped file) can be counted. Inputs no longer than
+ * Dispatch.parallelThreshold() are counted on the calling thread.
+ *
+ * @see ShiftDetector
+ */
+public final class CharHistogram {
+   /**
+    * Histogram slot that counts all characters above 255.
+    */
+   public static final int OTHER = 256;
+
+   /**
+    * Number of slots in a histogram.
+    */
+   public static final int SIZE = 257;
+
+   /**
+    * Private constructor, so class cannot be instantiated.
+    */
+   private CharHistogram() {
+   }
+
+   // -------------------------------------------------------------------------
+   // count
+   // -------------------------------------------------------------------------
+
+   /**
+    * Count the characters of part of a character sequence.
+    *
+    * @param cs    Characters to count.
+    * @param start Index of first character.
+    * @param end   Index after last character.
+    *
+    * @return Histogram.
+    */
+   public static int[] count(CharSequence cs, int start, int end) {
+      int[] counts = new int[SIZE];
+
+      for (int i = start; i < end; i ++) {
+         char c = cs.charAt(i);
+
+         counts[(c < OTHER) ? c : OTHER] ++;
+      }
+
+      return counts;
+   }
+
+   /**
+    * Count the characters of part of a character array.
+    *
+    * @param arr Characters to count.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    *
+    * @return Histogram.
+    */
+   public static int[] count(char[] arr, int off, int len) {
+      int[] counts = new int[SIZE];
+      int   end = off + len;
+
+      for (int i = off; i < end; i ++) {
+         char c = arr[i];
+
+         counts[(c < OTHER) ? c : OTHER] ++;
+      }
+
+      return counts;
+   }
+
+   /**
+    * Count the characters of part of a byte array of Latin-1 text.
+    *
+    * @param arr Bytes to count.
+    * @param off Index of first byte.
+    * @param len Number of bytes.
+    *
+    * @return Histogram.
+    */
+   public static int[] count(byte[] arr, int off, int len) {
+      // Runs of the same byte would make each increment wait for the one
+      // before it, so spread the counts over four tables and add them up at
+      // the end.
+      int[] c0 = new int[256];
+      int[] c1 = new int[256];
+      int[] c2 = new int[256];
+      int[] c3 = new int[256];
+      int   end = off + len;
+      int   i = off;
+
+      for (; i + 3 < end; i += 4) {
+         c0[arr[i] & 0xFF] ++;
+         c1[arr[i + 1] & 0xFF] ++;
+         c2[arr[i + 2] & 0xFF] ++;
+         c3[arr[i + 3] & 0xFF] ++;
+      }
+
+      for (; i < end; i ++) {
+         c0[arr[i] & 0xFF] ++;
+      }
+
+      int[] counts = new int[SIZE];
+
+      for (int b = 0; b < 256; b ++) {
+         counts[b] = c0[b] + c1[b] + c2[b] + c3[b];
+      }
+
+      return counts;
+   }
+
+   /**
+    * Count the bytes between the position and limit of a buffer of Latin-1
+    * text. The buffer's position is not changed.
+    *
+    * @param buf Bytes to count.
+    *
+    * @return Histogram.
+    */
+   public static int[] count(ByteBuffer buf) {
+      if (buf.hasArray()) {
+         return count(buf.array(), buf.arrayOffset() + buf.position(),
+            buf.remaining());
+      }
+
+      int[] counts = new int[SIZE];
+
+      for (int i = buf.position(); i < buf.limit(); i ++) {
+         counts[buf.get(i) & 0xFF] ++;
+      }
+
+      return counts;
+   }
+
+   // -------------------------------------------------------------------------
+   // parallelCount
+   // -------------------------------------------------------------------------
+
+   /**
+    * Count the characters of a character sequence, splitting large inputs
+    * across threads.
+    *
+    * @param cs Characters to count.
+    *
+    * @return Histogram.
+    */
+   public static long[] parallelCount(final CharSequence cs) {
+      return invoke(cs.length(), new Counter() {
+         public int[] range(long start, long end) {
+            return count(cs, (int) start, (int) end);
+         }
+      });
+   }
+
+   /**
+    * Count the characters of a character array, splitting large inputs
+    * across threads.
+    *
+    * @param arr Characters to count.
+    *
+    * @return Histogram.
+    */
+   public static long[] parallelCount(final char[] arr) {
+      return parallelCount(arr, arr.length, Dispatch.parallelThreshold());
+   }
+
+   /**
+    * Count the first len characters of a character array, splitting the
+    * input into pieces no longer than threshold. Dispatch times this to
+    * calibrate the threshold.
+    *
+    * @param arr       Characters to count.
+    * @param len       Number of characters.
+    * @param threshold Longest piece counted on one thread.
+    *
+    * @return Histogram.
+    */
+   static long[] parallelCount(final char[] arr, int len, int threshold) {
+      return ForkJoinPool.commonPool().invoke(new CountTask(0, len,
+         threshold, new Counter() {
+            public int[] range(long start, long end) {
+               return count(arr, (int) start, (int) (end - start));
+            }
+         }));
+   }
+
+   /**
+    * Count the characters of a byte array of Latin-1 text, splitting large
+    * inputs across threads.
+    *
+    * @param arr Bytes to count.
+    *
+    * @return Histogram.
+    */
+   public static long[] parallelCount(final byte[] arr) {
+      return invoke(arr.length, new Counter() {
+         public int[] range(long start, long end) {
+            return count(arr, (int) start, (int) (end - start));
+         }
+      });
+   }
+
+   /**
+    * Count the bytes between the position and limit of a buffer of Latin-1
+    * text, such as a mapped file, splitting large inputs across threads. The
+    * buffer's position is not changed.
+    *
+    * @param buf Bytes to count.
+    *
+    * @return Histogram.
+    */
+   public static long[] parallelCount(final ByteBuffer buf) {
+      final int pos = buf.position();
+
+      return invoke(buf.remaining(), new Counter() {
+         public int[] range(long start, long end) {
+            ByteBuffer slice = buf.duplicate();
+
+            slice.limit(pos + (int) end).position(pos + (int) start);
+
+            return count(slice);
+         }
+      });
+   }
+
+   /**
+    * Count an input of the given length on the common fork/join pool.
+    *
+    * @param length  Number of elements.
+    * @param counter Counts one range of the input.
+    *
+    * @return Histogram.
+    */
+   private static long[] invoke(long length, Counter counter) {
+      return ForkJoinPool.commonPool().invoke(new CountTask(0, length,
+         Dispatch.parallelThreshold(), counter));
+   }
+
+   /**
+    * Get the counts of the letters A-Z from a histogram, with upper and lower
+    * case added together.
+    *
+    * @param histogram Histogram.
+    *
+    * @return 26 letter counts.
+    */
+   public static long[] letters(long[] histogram) {
+      long[] counts = new long[26];
+
+      for (int i = 0; i < 26; i ++) {
+         counts[i] = histogram['A' + i] + histogram['a' + i];
+      }
+
+      return counts;
+   }
+
+   /**
+    * Get the counts of the digits 0-9 from a histogram.
+    *
+    * @param histogram Histogram.
+    *
+    * @return 10 digit counts.
+    */
+   public static long[] digits(long[] histogram) {
+      long[] counts = new long[10];
+
+      for (int i = 0; i < 10; i ++) {
+         counts[i] = histogram['0' + i];
+      }
+
+      return counts;
+   }
+
+   /**
+    * Convert an int histogram to a long histogram.
+    *
+    * @param histogram Histogram.
+    *
+    * @return Histogram with long counts.
+    */
+   public static long[] toLong(int[] histogram) {
+      long[] counts = new long[histogram.length];
+
+      for (int i = 0; i < histogram.length; i ++) {
+         counts[i] = histogram[i];
+      }
+
+      return counts;
+   }
+
+   /**
+    * Counter counts one range of an input on the current thread.
+    */
+   private interface Counter {
+      /**
+       * Count one range.
+       *
+       * @param start Index of first element.
+       * @param end   Index after last element.
+       *
+       * @return Histogram.
+       */
+      int[] range(long start, long end);
+   }
+
+   /**
+    * CountTask splits a range in half until it is small enough to count on
+    * one thread, then adds the halves' histograms together.
+    */
+   private static final class CountTask extends RecursiveTask<long[]> {
+      private static final long serialVersionUID = 1L;
+
+      private final long              start;
+      private final long              end;
+      private final int               threshold;
+      private final transient Counter counter;
+
+      CountTask(long start, long end, int threshold, Counter counter) {
+         this.start = start;
+         this.end = end;
+         this.threshold = threshold;
+         this.counter = counter;
+      }
+
+      protected long[] compute() {
+         if (end - start <= threshold) {
+            return toLong(counter.range(start, end));
+         }
+
+         long      mid = (start + end) >>> 1;
+         CountTask left = new CountTask(start, mid, threshold, counter);
+         CountTask right = new CountTask(mid, end, threshold, counter);
+
+         left.fork();
+
+         long[] counts = right.compute();
+         long[] other = left.join();
+
+         for (int i = 0; i < counts.length; i ++) {
+            counts[i] += other[i];
+         }
+
+         return counts;
+      }
+   }
+}
@@ -0,0 +1,684 @@
+// package org.javacogs;
+
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * CharTransform is a character-for-character substitution, such as ROT13 or
+ * Atbash, held as a lookup table. Transforms can be chained with andThen(),
+ * which fuses the chain into a single table, so any chain costs one pass over
+ * the text. The inverse of a one-to-one transform is derived from its table.
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * t = CharTransform.ROT13N5.andThen(CharTransform.rotAscii(3))
+ * t.inverse().apply(t.apply(s)) => s
+ * </blockquote>
+ * Transforms that only change characters below 0x100 keep a 256-entry
+ * table and leave other characters unchanged. Others keep a table for the
+ * whole char range.
+ */
+public final class CharTransform {
+   /**
+    * Transform that changes nothing.
+    */
+   public static final CharTransform IDENTITY = new CharTransform(identity());
+
+   /**
+    * ROT13: rotate letters by 13.
+    */
+   public static final CharTransform ROT13 = caesar(13, 0);
+
+   /**
+    * ROT13N5: rotate letters by 13 and digits by 5.
+    */
+   public static final CharTransform ROT13N5 = caesar(13, 5);
+
+   /**
+    * ROT47: rotate the printable ASCII characters '!' through '~' by 47.
+    */
+   public static final CharTransform ROT47 = rot47();
+
+   /**
+    * Atbash: reverse the alphabet, so A <=> Z, B <=> Y, etc.
+    */
+   public static final CharTransform ATBASH = atbash();
+
+   private static final int LATIN1 = 256;
+   private static final int ALL = 65536;
+
+   // Folding ROTASCII transforms, by rotation length modulo 256; built when
+   // first needed.
+   private static final AtomicReferenceArray<CharTransform> folding =
+      new AtomicReferenceArray<CharTransform>(LATIN1);
+
+   private final char[]    table;
+   private final boolean   latin1;  // Maps Latin-1 to Latin-1.
+   private volatile byte[] bytes;   // Latin-1 table; built when first needed.
+
+   /**
+    * Private constructor; use the factory methods.
+    *
+    * @param table Lookup table; 256 or 65536 entries.
+    */
+   private CharTransform(char[] table) {
+      boolean closed = true;
+
+      for (int c = 0; c < LATIN1; c ++) {
+         closed &= (table[c] < LATIN1);
+      }
+
+      this.table = table;
+      this.latin1 = closed;
+   }
+
+   // -------------------------------------------------------------------------
+   // factories
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get a transform that rotates letters by the given amount, keeping case.
+    *
+    * @param n Rotation length. May be negative.
+    *
+    * @return Transform.
+    */
+   public static CharTransform rot(int n) {
+      return caesar(n, 0);
+   }
+
+   /**
+    * Get a transform that rotates letters and digits by separate amounts,
+    * keeping case. Letters rotate within A-Z and a-z, digits within 0-9.
+    *
+    * @param letterShift Rotation length for letters. May be negative.
+    * @param digitShift  Rotation length for digits. May be negative.
+    *
+    * @return Transform.
+    */
+   public static CharTransform caesar(int letterShift, int digitShift) {
+      char[] t = identity();
+
+      rotate(t, 'A', 26, letterShift);
+      rotate(t, 'a', 26, letterShift);
+      rotate(t, '0', 10, digitShift);
+
+      return new CharTransform(t);
+   }
+
+   /**
+    * Get a transform that rotates the characters 0-255 within 0-255, as
+    * StrUtil.rotAscii(char, int) does. Characters above 0xFF are unchanged,
+    * rather than folded into 0-255 as StrUtil.rotAscii() folds them, so the
+    * transform is one-to-one and has an inverse.
+    *
+    * @param rlen Rotation length.
+    *
+    * @return Transform.
+    */
+   public static CharTransform rotAscii(int rlen) {
+      char[] t = new char[LATIN1];
+
+      for (int c = 0; c < LATIN1; c ++) {
+         t[c] = StrUtil.rotAscii((char) c, rlen);
+      }
+
+      return new CharTransform(t);
+   }
+
+   /**
+    * Get a transform that does exactly what StrUtil.rotAscii(char, int)
+    * does, folding characters above 0xFF into 0-255. It has no inverse.
+    * There are only 256 such transforms, so each is built once and kept.
+    *
+    * @param rlen Rotation length.
+    *
+    * @return Transform.
+    */
+   static CharTransform foldingRotAscii(int rlen) {
+      int           k = rlen & 0xFF;
+      CharTransform t = folding.get(k);
+
+      // Transforms are immutable, so a race only builds one twice.
+      if (t == null) {
+         char[] arr = new char[ALL];
+
+         for (int c = 0; c < ALL; c ++) {
+            arr[c] = StrUtil.rotAscii((char) c, k);
+         }
+
+         t = new CharTransform(arr);
+         folding.set(k, t);
+      }
+
+      return t;
+   }
+
+   /**
+    * Get a transform that maps each character of from to the character at
+    * the same index of to. Other characters are unchanged. If a character
+    * appears more than once in from, the last mapping wins.
+    *
+    * @param from Characters to replace.
+    * @param to   Replacement characters.
+    *
+    * @return Transform.
+    *
+    * @throws IllegalArgumentException if from and to differ in length.
+    */
+   public static CharTransform map(String from, String to) {
+      if (from.length() != to.length()) {
+         throw new IllegalArgumentException(
+            "from and to must be the same length");
+      }
+
+      boolean wide = false;
+
+      for (int i = 0; i < from.length(); i ++) {
+         if ((from.charAt(i) >= LATIN1) || (to.charAt(i) >= LATIN1)) {
+            wide = true;
+         }
+      }
+
+      char[] t = wide ? widen(identity()) : identity();
+
+      for (int i = 0; i < from.length(); i ++) {
+         t[from.charAt(i)] = to.charAt(i);
+      }
+
+      return new CharTransform(t);
+   }
+
+   /**
+    * Get a transform by name: "rot13", "rot13n5", "rot47", "atbash",
+    * "rot:<i>n</i>" for rot(n), or "rotascii:<i>n</i>" for rotAscii(n). Names
+    * are not case sensitive.
+    *
+    * @param name Name of transform.
+    *
+    * @return Transform.
+    *
+    * @throws IllegalArgumentException if the name is not recognized.
+    */
+   public static CharTransform forName(String name) {
+      String lower = name.toLowerCase();
+      int    colon = lower.indexOf(':');
+
+      try {
+         if (lower.equals("rot13")) {
+            return ROT13;
+         } else if (lower.equals("rot13n5")) {
+            return ROT13N5;
+         } else if (lower.equals("rot47")) {
+            return ROT47;
+         } else if (lower.equals("atbash")) {
+            return ATBASH;
+         } else if (lower.startsWith("rot:")) {
+            return rot(Integer.parseInt(lower.substring(colon + 1)));
+         } else if (lower.startsWith("rotascii:")) {
+            return rotAscii(Integer.parseInt(lower.substring(colon + 1)));
+         }
+      } catch(NumberFormatException ex) {
+         // Fall through.
+      }
+
+      throw new IllegalArgumentException("unknown transform: " + name);
+   }
+
+   private static CharTransform rot47() {
+      char[] t = identity();
+
+      rotate(t, '!', 94, 47);
+
+      return new CharTransform(t);
+   }
+
+   private static CharTransform atbash() {
+      char[] t = identity();
+
+      for (int i = 0; i < 26; i ++) {
+         t['A' + i] = (char) ('Z' - i);
+         t['a' + i] = (char) ('z' - i);
+      }
+
+      return new CharTransform(t);
+   }
+
+   private static char[] identity() {
+      char[] t = new char[LATIN1];
+
+      for (int c = 0; c < t.length; c ++) {
+         t[c] = (char) c;
+      }
+
+      return t;
+   }
+
+   private static char[] widen(char[] t) {
+      char[] w = new char[ALL];
+
+      System.arraycopy(t, 0, w, 0, t.length);
+
+      for (int c = t.length; c < ALL; c ++) {
+         w[c] = (char) c;
+      }
+
+      return w;
+   }
+
+   /**
+    * Rotate a run of consecutive table entries.
+    *
+    * @param t     Table to modify.
+    * @param first First character of the run.
+    * @param size  Number of characters in the run.
+    * @param n     Rotation length. May be negative.
+    */
+   private static void rotate(char[] t, char first, int size, int n) {
+      int shift = ((n % size) + size) % size;
+
+      for (int i = 0; i < size; i ++) {
+         t[first + i] = (char) (first + ((i + shift) % size));
+      }
+   }
+
+   // -------------------------------------------------------------------------
+   // composition
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get a transform that applies this transform and then the given one. The
+    * result is a single table.
+    *
+    * @param next Transform to apply after this one.
+    *
+    * @return Fused transform.
+    */
+   public CharTransform andThen(CharTransform next) {
+      int    size = Math.max(table.length, next.table.length);
+      char[] t = new char[size];
+
+      for (int c = 0; c < size; c ++) {
+         t[c] = next.apply(apply((char) c));
+      }
+
+      return new CharTransform(t);
+   }
+
+   /**
+    * Get a transform that applies the given transforms in order.
+    *
+    * @param transforms Transforms to apply.
+    *
+    * @return Fused transform.
+    */
+   public static CharTransform chain(CharTransform[] transforms) {
+      CharTransform t = IDENTITY;
+
+      for (int i = 0; i < transforms.length; i ++) {
+         t = t.andThen(transforms[i]);
+      }
+
+      return t;
+   }
+
+   /**
+    * Determine whether this transform is one-to-one, and so has an inverse.
+    *
+    * @return True if the transform is invertible.
+    */
+   public boolean isInvertible() {
+      boolean[] seen = new boolean[table.length];
+
+      for (int c = 0; c < table.length; c ++) {
+         char r = table[c];
+
+         if ((r >= table.length) || seen[r]) {
+            return false;
+         }
+
+         seen[r] = true;
+      }
+
+      return true;
+   }
+
+   /**
+    * Test whether the transform changes only ASCII characters, into other
+    * ASCII characters. Such a transform can be applied byte by byte to UTF-8
+    * text, since every byte of a multi-byte UTF-8 character is above 0x7F.
+    *
+    * @return True if the transform is closed over ASCII and leaves every
+    *         other character alone.
+    */
+   public boolean isAsciiOnly() {
+      for (int c = 0; c < table.length; c ++) {
+         if ((c < 0x80) ? (table[c] >= 0x80) : (table[c] != c)) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Get the transform that undoes this one.
+    *
+    * @return Inverse transform.
+    *
+    * @throws IllegalStateException if this transform is not one-to-one.
+    */
+   public CharTransform inverse() {
+      if (! isInvertible()) {
+         throw new IllegalStateException("transform is not invertible");
+      }
+
+      char[] t = new char[table.length];
+
+      for (int c = 0; c < table.length; c ++) {
+         t[table[c]] = (char) c;
+      }
+
+      return new CharTransform(t);
+   }
+
+   // -------------------------------------------------------------------------
+   // apply
+   // -------------------------------------------------------------------------
+
+   /**
+    * Transform the given character.
+    *
+    * @param c Character to transform.
+    *
+    * @return Transformed character.
+    */
+   public char apply(char c) {
+      return (c < table.length) ? table[c] : c;
+   }
+
+   /**
+    * Transform the given string in a pooled scratch buffer, so the only
+    * allocation is the result.
+    *
+    * @param str String to transform.
+    *
+    * @return Transformed string. Empty string if str is null.
+    */
+   public String apply(String str) {
+      if (str == null) {
+         return "";
+      }
+
+      // The chars are transformed directly rather than with applyLatin1(),
+      // whose byte copy would be a second allocation, and which wastes an
+      // encode pass on text that is not Latin-1.
+      int    n = str.length();
+      char[] buf = ScratchPool.SHARED.take(n);
+
+      try {
+         str.getChars(0, n, buf, 0);
+         apply(buf, 0, n);
+
+         return new String(buf, 0, n);
+      } finally {
+         ScratchPool.SHARED.give(buf);
+      }
+   }
+
+   /**
+    * Transform the given strings. Each string is transformed in a pooled
+    * scratch buffer, so the only allocation per string is the result.
+    *
+    * @param src Strings to transform. Null elements become empty strings.
+    *
+    * @return Transformed strings.
+    */
+   public String[] apply(String[] src) {
+      String[] dst = new String[src.length];
+
+      apply(src, dst);
+
+      return dst;
+   }
+
+   /**
+    * Transform the given strings into a caller-supplied array. The source and
+    * destination may be the same array.
+    *
+    * @param src Strings to transform. Null elements become empty strings.
+    * @param dst Array to receive the transformed strings; at least as long as
+    *            src.
+    */
+   public void apply(String[] src, String[] dst) {
+      for (int i = 0; i < src.length; i ++) {
+         dst[i] = apply(src[i]);
+      }
+   }
+
+   /**
+    * Transform the given list of strings.
+    *
+    * @param src Strings to transform. Null elements become empty strings.
+    *
+    * @return New list of transformed strings.
+    */
+   public List<String> apply(List<String> src) {
+      List<String> dst = new ArrayList<String>(src.size());
+
+      for (String str : src) {
+         dst.add(apply(str));
+      }
+
+      return dst;
+   }
+
+   /**
+    * Transform the given strings into a caller-supplied character array,
+    * packed end to end, without allocating.
+    *
+    * @param src  Strings to transform. Null elements are treated as empty.
+    * @param dst  Array to receive the transformed characters.
+    * @param off  Index in dst at which to start.
+    * @param ends Array to receive, for each string, the index in dst just
+    *             after its last character; at least as long as src.
+    *
+    * @return Index in dst after the last character written.
+    *
+    * @throws IndexOutOfBoundsException if dst is too small.
+    */
+   public int apply(String[] src, char[] dst, int off, int[] ends) {
+      for (int i = 0; i < src.length; i ++) {
+         String str = src[i];
+
+         if (str != null) {
+            int n = str.length();
+
+            str.getChars(0, n, dst, off);
+            apply(dst, off, n);
+            off += n;
+         }
+
+         ends[i] = off;
+      }
+
+      return off;
+   }
+
+   /**
+    * Transform the given buffer.
+    *
+    * @param sb Buffer to transform.
+    *
+    * @return Reference to modified buffer.
+    */
+   public StringBuffer apply(StringBuffer sb) {
+      // Copy out, transform, and copy back, rather than locking the buffer
+      // for every character.
+      char[] arr = new char[sb.length()];
+
+      sb.getChars(0, arr.length, arr, 0);
+      apply(arr, 0, arr.length);
+      sb.setLength(0);
+      sb.append(arr);
+
+      return sb;
+   }
+
+   /**
+    * Transform part of a character array in place.
+    *
+    * @param arr Array to transform.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    */
+   public void apply(char[] arr, int off, int len) {
+      char[] t = table;
+      int    end = off + len;
+
+      if (t.length == ALL) {
+         for (int i = off; i < end; i ++) {
+            arr[i] = t[arr[i]];
+         }
+      } else {
+         for (int i = off; i < end; i ++) {
+            char c = arr[i];
+
+            if (c < LATIN1) {
+               arr[i] = t[c];
+            }
+         }
+      }
+   }
+
+   /**
+    * Transform part of a byte array of Latin-1 text in place.
+    *
+    * @param arr Array to transform.
+    * @param off Index of first byte.
+    * @param len Number of bytes.
+    *
+    * @throws IllegalStateException if the transform maps a Latin-1 character
+    *         to a character above 255.
+    */
+   public void apply(byte[] arr, int off, int len) {
+      byte[] t = byteTable();
+      int    end = off + len;
+
+      for (int i = off; i < end; i ++) {
+         arr[i] = t[arr[i] & 0xFF];
+      }
+   }
+
+   /**
+    * Transform the Latin-1 bytes between the position and limit of a buffer
+    * in place. The position is not changed. Direct buffers are transformed
+    * without copying to the heap.
+    *
+    * @param buf Buffer to transform.
+    *
+    * @return Reference to buf.
+    *
+    * @throws IllegalStateException if the transform maps a Latin-1 character
+    *         to a character above 255.
+    */
+   public ByteBuffer apply(ByteBuffer buf) {
+      if (buf.hasArray()) {
+         apply(buf.array(), buf.arrayOffset() + buf.position(),
+            buf.remaining());
+      } else {
+         byte[] t = byteTable();
+
+         for (int i = buf.position(); i < buf.limit(); i ++) {
+            buf.put(i, t[buf.get(i) & 0xFF]);
+         }
+      }
+
+      return buf;
+   }
+
+   /**
+    * Transform the characters between the position and limit of a buffer in
+    * place. The position is not changed.
+    *
+    * @param buf Buffer to transform.
+    *
+    * @return Reference to buf.
+    */
+   public CharBuffer apply(CharBuffer buf) {
+      if (buf.hasArray()) {
+         apply(buf.array(), buf.arrayOffset() + buf.position(),
+            buf.remaining());
+      } else {
+         for (int i = buf.position(); i < buf.limit(); i ++) {
+            buf.put(i, apply(buf.get(i)));
+         }
+      }
+
+      return buf;
+   }
+
+   /**
+    * Transform a string as Latin-1 bytes, which are half the size of chars.
+    * The check that the string is Latin-1 is done in the same pass as the
+    * transform.
+    *
+    * @param str String to transform.
+    *
+    * @return Transformed string; null if str has a character above 0xFF or
+    *         this transform does not map Latin-1 to Latin-1.
+    */
+   String applyLatin1(String str) {
+      if (! latin1) {
+         return null;
+      }
+
+      byte[] t = byteTable();
+      byte[] b = str.getBytes(StandardCharsets.ISO_8859_1);
+
+      for (int i = 0; i < b.length; i ++) {
+         int c = b[i] & 0xFF;
+
+         // The encoder writes '?' for characters above 0xFF.
+         if ((c == '?') && (str.charAt(i) != '?')) {
+            return null;
+         }
+
+         b[i] = t[c];
+      }
+
+      return new String(b, StandardCharsets.ISO_8859_1);
+   }
+
+   /**
+    * Get the table that maps Latin-1 bytes.
+    *
+    * @return Byte table.
+    *
+    * @throws IllegalStateException if the transform maps a Latin-1 character
+    *         to a character above 255.
+    */
+   private byte[] byteTable() {
+      byte[] t = bytes;
+
+      if (t == null) {
+         if (! latin1) {
+            throw new IllegalStateException(
+               "transform does not map Latin-1 to Latin-1");
+         }
+
+         t = new byte[LATIN1];
+
+         for (int c = 0; c < LATIN1; c ++) {
+            t[c] = (byte) table[c];
+         }
+
+         // The volatile write publishes the filled table to other threads.
+         bytes = t;
+      }
+
+      return t;
+   }
+}
@@ -0,0 +1,405 @@
+// package org.javacogs;
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import javax.management.*;
+
+/**
+ * Dispatch holds the input lengths at which StrUtil and its helpers switch
+ * from one implementation of an operation to another:
+ * <ul>
+ * <li>search: text length at and above which indexOf() and count() use a
+ *     compiled search plan rather than a plain scan. Single-character
+ *     targets are always scanned.</li>
+ * <li>bulk: buffer length at and above which rot13() and rot13n5() copy a
+ *     StringBuffer out, transform it through a table, and copy it back,
+ *     rather than replacing one character at a time.</li>
+ * <li>parallel: input length above which CharHistogram.parallelCount() and
+ *     LineIndex.parallelOf() split their input across the fork/join pool.
+ *     Each piece is at most this long.</li>
+ * </ul>
+ * The crossover points depend on the machine, so each threshold is set the
+ * first time it is needed, from the system property
+ * "strutil.dispatch.<i>name</i>" if it is set, or else by timing both
+ * implementations over a range of lengths. Timing takes some milliseconds,
+ * so it runs on a background daemon thread, one threshold at a time, and
+ * the default is used until it finishes; no caller waits for it. If
+ * "strutil.dispatch.calibrate" is "false", the defaults are kept. The
+ * thresholds are published as a platform MBean named
+ * "org.javacogs:type=Dispatch" when "strutil.stats" is "true".
+ *
+ * @see DispatchMBean
+ */
+public final class Dispatch implements DispatchMBean {
+   /**
+    * Threshold that is never reached.
+    */
+   public static final int NEVER = Integer.MAX_VALUE;
+
+   // Threshold identifiers. These index the arrays below.
+   private static final int SEARCH   = 0;
+   private static final int BULK     = 1;
+   private static final int PARALLEL = 2;
+
+   private static final String[] NAMES = { "search", "bulk", "parallel" };
+   private static final int[]    DEFAULTS = { 64, 256, 1 << 20 };
+
+   private static final String UNSET = "unset";
+
+   private static final boolean CALIBRATE =
+      ! "false".equals(System.getProperty("strutil.dispatch.calibrate"));
+
+   /**
+    * Characters each timing run processes, spread over as many calls as
+    * the length being timed allows.
+    */
+   private static final int WORK = 1 << 14;
+
+   /**
+    * Timing runs per implementation and length; the fastest is kept.
+    */
+   private static final int RUNS = 3;
+
+   private static final AtomicIntegerArray thresholds =
+      new AtomicIntegerArray(new int[] { -1, -1, -1 });
+   private static final String[]   sources = { UNSET, UNSET, UNSET };
+   private static final AtomicLong calibrationNanos = new AtomicLong();
+
+   /**
+    * Runs calibrations in turn, so that they don't skew each other's
+    * timings, on a daemon thread that ends when there is nothing to do.
+    */
+   private static final ExecutorService calibrator = new ThreadPoolExecutor(
+      0, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+      r -> {
+         Thread thread = new Thread(r, "strutil-dispatch-calibration");
+
+         thread.setDaemon(true);
+
+         return thread;
+      });
+
+   private static int generation;  // Guarded by Dispatch.class.
+
+   private static volatile long sink;  // Keeps timed results alive.
+
+   private static final Dispatch INSTANCE = new Dispatch();
+
+   static {
+      if (StrUtilStats.ENABLED) {
+         try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+               INSTANCE, new ObjectName("org.javacogs:type=Dispatch"));
+         } catch(JMException ex) {
+            // Thresholds are still used; they just can't be browsed.
+         }
+      }
+   }
+
+   /**
+    * Private constructor, so class can only be instantiated for the MBean.
+    */
+   private Dispatch() {
+   }
+
+   /**
+    * Get the search threshold.
+    *
+    * @return Text length at and above which to use a compiled search plan.
+    */
+   public static int searchThreshold() {
+      int t = thresholds.get(SEARCH);
+
+      return (t >= 0) ? t : set(SEARCH);
+   }
+
+   /**
+    * Get the bulk threshold.
+    *
+    * @return Buffer length at and above which to transform a copy.
+    */
+   public static int bulkThreshold() {
+      int t = thresholds.get(BULK);
+
+      return (t >= 0) ? t : set(BULK);
+   }
+
+   /**
+    * Get the parallel threshold.
+    *
+    * @return Input length above which to split across threads.
+    */
+   public static int parallelThreshold() {
+      int t = thresholds.get(PARALLEL);
+
+      return (t >= 0) ? t : set(PARALLEL);
+   }
+
+   /**
+    * Get the thresholds.
+    *
+    * @return Thresholds, also published as an MBean.
+    */
+   public static DispatchMBean thresholds() {
+      return INSTANCE;
+   }
+
+   /**
+    * Set a threshold from its system property, or else to its default while
+    * it is calibrated in the background, unless another thread has just
+    * done so.
+    *
+    * @param which Threshold identifier.
+    *
+    * @return Threshold.
+    */
+   private static synchronized int set(int which) {
+      int t = thresholds.get(which);
+
+      if (t >= 0) {
+         return t;
+      }
+
+      Integer prop = Integer.getInteger("strutil.dispatch." + NAMES[which]);
+
+      if (prop != null) {
+         t = Math.max(1, prop);
+         sources[which] = "property";
+      } else {
+         t = DEFAULTS[which];
+         sources[which] = "default";
+
+         if (CALIBRATE) {
+            sources[which] = "calibrating";
+            calibrateLater(which, generation);
+         }
+      }
+
+      thresholds.set(which, t);
+
+      return t;
+   }
+
+   /**
+    * Calibrate a threshold on the calibration thread, and replace the
+    * default with the result unless the thresholds have been reset since.
+    *
+    * @param which Threshold identifier.
+    * @param gen   Generation of the thresholds when calibration was asked
+    *              for.
+    */
+   private static void calibrateLater(final int which, final int gen) {
+      calibrator.execute(() -> {
+         long t0 = System.nanoTime();
+         int  t;
+
+         try {
+            t = calibrate(which);
+         } catch(RuntimeException | OutOfMemoryError ex) {
+            t = -1;   // Keep the default.
+         }
+
+         long nanos = System.nanoTime() - t0;
+
+         synchronized (Dispatch.class) {
+            if (gen == generation) {
+               calibrationNanos.addAndGet(nanos);
+
+               if (t >= 0) {
+                  thresholds.set(which, t);
+                  sources[which] = "calibrated";
+               } else {
+                  sources[which] = "default";
+               }
+            }
+         }
+      });
+   }
+
+   // -------------------------------------------------------------------------
+   // calibration
+   // -------------------------------------------------------------------------
+
+   private static int calibrate(int which) {
+      switch (which) {
+      case SEARCH:
+         return calibrateSearch();
+      case BULK:
+         return calibrateBulk();
+      default:
+         return calibrateParallel();
+      }
+   }
+
+   private static int calibrateSearch() {
+      final String     text = letters(4096);
+      final String     target = "qxzjvkwq";
+      final SearchPlan plan = SearchPlan.compile(target);
+
+      return crossover(8, 4096,
+         n -> StrUtil.scan(text, target, text.length() - n),
+         n -> plan.indexOf(text, text.length() - n));
+   }
+
+   private static int calibrateBulk() {
+      final StringBuffer sb = new StringBuffer(letters(4096));
+
+      return crossover(4, 4096,
+         n -> {
+            sb.setLength(n);
+
+            for (int i = 0; i < n; i ++) {
+               sb.setCharAt(i, StrUtil.rot13(sb.charAt(i)));
+            }
+
+            return sb.length();
+         },
+         n -> {
+            sb.setLength(n);
+
+            return CharTransform.ROT13.apply(sb).length();
+         });
+   }
+
+   private static int calibrateParallel() {
+      final int pieces = Runtime.getRuntime().availableProcessors();
+
+      if (pieces < 2) {
+         return NEVER;
+      }
+
+      final char[] arr = letters(1 << 21).toCharArray();
+
+      // Time one thread against pieces threads; where the split first pays,
+      // the whole input is the longest worth leaving on one thread.
+      return crossover(1 << 13, arr.length,
+         n -> CharHistogram.count(arr, 0, n)[0],
+         n -> (int) CharHistogram.parallelCount(arr, n,
+            (n + pieces - 1) / pieces)[0]);
+   }
+
+   /**
+    * Find the shortest length, doubling from min to max, at which the
+    * second implementation is faster than the first, and still faster at
+    * twice that length, so that one noisy timing does not decide.
+    *
+    * @param min    First length to time.
+    * @param max    Last length to time.
+    * @param first  Implementation used below the threshold.
+    * @param second Implementation used at and above the threshold.
+    *
+    * @return Threshold; NEVER if second is never faster.
+    */
+   private static int crossover(int min, int max, IntUnaryOperator first,
+         IntUnaryOperator second) {
+      // Let the JIT compile both before anything is timed.
+      time(first, max);
+      time(second, max);
+
+      int found = NEVER;
+
+      for (int n = min; n <= max; n *= 2) {
+         if (time(second, n) >= time(first, n)) {
+            found = NEVER;
+         } else if ((found != NEVER) || (n == max)) {
+            return (found != NEVER) ? found : n;
+         } else {
+            found = n;
+         }
+      }
+
+      return found;
+   }
+
+   /**
+    * Time an implementation at a length.
+    *
+    * @param op Implementation.
+    * @param n  Input length.
+    *
+    * @return Fastest time per character, in nanoseconds.
+    */
+   private static double time(IntUnaryOperator op, int n) {
+      int  calls = Math.max(1, WORK / n);
+      long best = Long.MAX_VALUE;
+      long r = 0;
+
+      for (int run = 0; run < RUNS; run ++) {
+         long t0 = System.nanoTime();
+
+         for (int i = 0; i < calls; i ++) {
+            r += op.applyAsInt(n);
+         }
+
+         best = Math.min(best, System.nanoTime() - t0);
+      }
+
+      sink += r;
+
+      return (double) best / ((long) calls * n);
+   }
+
+   /**
+    * Make a string of pseudo-random lowercase letters, the same every time.
+    *
+    * @param n Length.
+    *
+    * @return Letters.
+    */
+   private static String letters(int n) {
+      Random r = new Random(n);
+      char[] arr = new char[n];
+
+      for (int i = 0; i < n; i ++) {
+         arr[i] = (char) ('a' + r.nextInt(26));
+      }
+
+      return new String(arr);
+   }
+
+   // -------------------------------------------------------------------------
+   // DispatchMBean
+   // -------------------------------------------------------------------------
+
+   public int getSearchThreshold() {
+      return searchThreshold();
+   }
+
+   public int getBulkThreshold() {
+      return bulkThreshold();
+   }
+
+   public int getParallelThreshold() {
+      return parallelThreshold();
+   }
+
+   public String[] getSources() {
+      String[] arr = new String[NAMES.length];
+
+      synchronized (Dispatch.class) {
+         for (int i = 0; i < NAMES.length; i ++) {
+            arr[i] = NAMES[i] + "=" + sources[i];
+         }
+      }
+
+      return arr;
+   }
+
+   public long getCalibrationNanos() {
+      return calibrationNanos.get();
+   }
+
+   public void recalibrate() {
+      synchronized (Dispatch.class) {
+         generation ++;
+
+         for (int i = 0; i < NAMES.length; i ++) {
+            thresholds.set(i, -1);
+            sources[i] = UNSET;
+         }
+      }
+   }
+}
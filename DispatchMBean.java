@@ -0,0 +1,55 @@
+// package org.javacogs;
+
+/**
+ * DispatchMBean is the management interface through which the dispatch
+ * thresholds are published.
+ *
+ * @see Dispatch
+ */
+public interface DispatchMBean {
+   /**
+    * Get the length of text at and above which searches use a compiled
+    * search plan.
+    *
+    * @return Search threshold.
+    */
+   public int getSearchThreshold();
+
+   /**
+    * Get the length of buffer at and above which transforms copy the text
+    * out, transform it as an array, and copy it back.
+    *
+    * @return Bulk threshold.
+    */
+   public int getBulkThreshold();
+
+   /**
+    * Get the length of input above which scans are split across the
+    * fork/join pool; also the size of each piece.
+    *
+    * @return Parallel threshold.
+    */
+   public int getParallelThreshold();
+
+   /**
+    * Get where each threshold came from: "property", "calibrated",
+    * "default", "calibrating" if the default is in use while calibration
+    * runs, or "unset" if it has not been needed yet.
+    *
+    * @return Threshold names and sources, as "name=source".
+    */
+   public String[] getSources();
+
+   /**
+    * Get the time spent calibrating.
+    *
+    * @return Total calibration time in nanoseconds.
+    */
+   public long getCalibrationNanos();
+
+   /**
+    * Forget the thresholds, so that they are set again when next needed.
+    * Calibrations still running are discarded.
+    */
+   public void recalibrate();
+}
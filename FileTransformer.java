@@ -0,0 +1,208 @@
+// package org.javacogs;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+/**
+ * FileTransformer applies a CharTransform to a file, byte for byte, writing
+ * the result to another file. Bytes are read as Latin-1; transforms that
+ * only change ASCII characters, such as ROT13 and ROT13N5, are therefore
+ * also safe for UTF-8 files.
+ * <br><br>
+ * The file is read and written with asynchronous channels through a small
+ * ring of direct buffers, so that reading the next chunk, transforming the
+ * current chunk, and writing the previous chunk all overlap.
+ * <br><br>
+ * Usage:
+ * <blockquote>
+ * java FileTransformer <i>transform</i> <i>in</i> <i>out</i>
+ * </blockquote>
+ *
+ * @see CharTransform#forName(String)
+ */
+public final class FileTransformer {
+   /**
+    * Default size of each buffer.
+    */
+   public static final int BUFFER_SIZE = 1 << 20;
+
+   /**
+    * Default number of buffers: one reading, one transforming, one writing.
+    */
+   public static final int BUFFERS = 3;
+
+   /**
+    * Private constructor, so class cannot be instantiated.
+    */
+   private FileTransformer() {
+   }
+
+   /**
+    * Transform a file with the default buffers.
+    *
+    * @param in  File to read.
+    * @param out File to write. It is created or truncated.
+    * @param t   Transform to apply.
+    *
+    * @return Number of bytes transformed.
+    *
+    * @throws IOException if reading or writing fails.
+    */
+   public static long transform(Path in, Path out, CharTransform t)
+         throws IOException {
+      return transform(in, out, t, BUFFER_SIZE, BUFFERS);
+   }
+
+   /**
+    * Transform a file.
+    *
+    * @param in         File to read.
+    * @param out        File to write. It is created or truncated.
+    * @param t          Transform to apply.
+    * @param bufferSize Size of each buffer.
+    * @param buffers    Number of buffers; at least 2.
+    *
+    * @return Number of bytes transformed.
+    *
+    * @throws IOException if reading or writing fails.
+    */
+   @SuppressWarnings({ "unchecked", "rawtypes" })
+   public static long transform(Path in, Path out, CharTransform t,
+         int bufferSize, int buffers) throws IOException {
+      if (buffers < 2) {
+         throw new IllegalArgumentException("buffers must be at least 2");
+      }
+
+      AsynchronousFileChannel src = AsynchronousFileChannel.open(in,
+         StandardOpenOption.READ);
+
+      try {
+         AsynchronousFileChannel dst = AsynchronousFileChannel.open(out,
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+
+         try {
+            ByteBuffer[]      ring = new ByteBuffer[buffers];
+            Future<Integer>[] writes = new Future[buffers];
+            long[]            writeAt = new long[buffers];
+            long              pos = 0;
+            int               k = 0;
+
+            for (int i = 0; i < buffers; i ++) {
+               ring[i] = ByteBuffer.allocateDirect(bufferSize);
+            }
+
+            Future<Integer> read = src.read(ring[0], 0);
+
+            while (true) {
+               int n = await(read);
+
+               if (n <= 0) {
+                  break;
+               }
+
+               ByteBuffer buf = ring[k];
+               long       at = pos;
+               int        next = (k + 1) % buffers;
+
+               buf.flip();
+               pos += n;
+
+               // Start reading the next chunk as soon as its buffer has been
+               // written out, then transform this chunk while it reads.
+               finishWrite(dst, ring[next], writes[next], writeAt[next]);
+               writes[next] = null;
+               ring[next].clear();
+               read = src.read(ring[next], pos);
+
+               t.apply(buf);
+               writes[k] = dst.write(buf, at);
+               writeAt[k] = at;
+               k = next;
+            }
+
+            for (int i = 0; i < buffers; i ++) {
+               finishWrite(dst, ring[i], writes[i], writeAt[i]);
+            }
+
+            return pos;
+         } finally {
+            dst.close();
+         }
+      } finally {
+         src.close();
+      }
+   }
+
+   /**
+    * Wait for a write to finish, and write whatever it left unwritten.
+    *
+    * @param dst   Channel being written.
+    * @param buf   Buffer being written.
+    * @param write Pending write; null if there is none.
+    * @param at    File position of the start of the buffer.
+    *
+    * @throws IOException if writing fails.
+    */
+   private static void finishWrite(AsynchronousFileChannel dst,
+         ByteBuffer buf, Future<Integer> write, long at) throws IOException {
+      if (write != null) {
+         await(write);
+
+         while (buf.hasRemaining()) {
+            await(dst.write(buf, at + buf.position()));
+         }
+      }
+   }
+
+   /**
+    * Wait for an I/O operation to finish.
+    *
+    * @param f Pending operation.
+    *
+    * @return Result of the operation, such as the number of bytes read or
+    *         written.
+    *
+    * @throws IOException if the operation failed or the wait was
+    *         interrupted.
+    */
+   static <V> V await(Future<V> f) throws IOException {
+      try {
+         return f.get();
+      } catch(ExecutionException ex) {
+         Throwable cause = ex.getCause();
+
+         if (cause instanceof IOException) {
+            throw (IOException) cause;
+         }
+
+         throw new IOException(cause);
+      } catch(InterruptedException ex) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException();
+      }
+   }
+
+   /**
+    * Transform a file from the command line.
+    *
+    * @param args Transform name, input file, output file.
+    */
+   public static void main(String[] args) throws IOException {
+      if (args.length != 3) {
+         System.err.println("usage: FileTransformer transform in out");
+         System.exit(2);
+      }
+
+      long start = System.nanoTime();
+      long bytes = transform(Paths.get(args[1]), Paths.get(args[2]),
+         CharTransform.forName(args[0]));
+      double secs = (System.nanoTime() - start) / 1e9;
+
+      System.out.println(bytes + " bytes in " + secs + " s (" +
+         (long) (bytes / secs / (1 << 20)) + " MB/s)");
+   }
+}
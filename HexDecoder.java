@@ -0,0 +1,97 @@
+// package org.javacogs;
+
+/**
+ * HexDecoder decodes the colon-delimited hexadecimal format written by
+ * StrUtil.hexEncode() one character at a time, so that input can arrive in
+ * pieces. Tokens are read the way Integer.parseInt(token, 16) reads them;
+ * tokens that are not valid are decoded as '?'. Empty tokens are skipped.
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * HexDecoder d = new HexDecoder();
+ * d.accept('4') => NONE
+ * d.accept('1') => NONE
+ * d.accept(':') => 'A'
+ * d.finish() => NONE
+ * </blockquote>
+ * Instances are not thread-safe.
+ *
+ * @see StrUtil#hexDecode(String)
+ */
+public final class HexDecoder {
+   /**
+    * Returned when no character has been decoded.
+    */
+   public static final int NONE = -1;
+
+   private int     length;      // Characters in current token.
+   private int     digits;      // Digits in current token.
+   private long    value;
+   private boolean negative;
+   private boolean bad;
+
+   /**
+    * Accept one input character.
+    *
+    * @param c Input character.
+    *
+    * @return Decoded character if c ends a token; otherwise NONE.
+    */
+   public int accept(int c) {
+      if (c == ':') {
+         return finish();
+      }
+
+      if ((length == 0) && ((c == '-') || (c == '+'))) {
+         negative = (c == '-');
+      } else {
+         int d = Character.digit(c, 16);
+
+         if (d < 0) {
+            bad = true;
+         } else if (! bad) {
+            value = (value << 4) | d;
+            digits ++;
+
+            // Stop before the value can overflow.
+            if (value > 0x80000000L) {
+               bad = true;
+            }
+         }
+      }
+
+      length ++;
+
+      return NONE;
+   }
+
+   /**
+    * End the current token, such as at the end of the input.
+    *
+    * @return Decoded character if there was a token; otherwise NONE.
+    */
+   public int finish() {
+      if (length == 0) {
+         return NONE;
+      }
+
+      long v = negative ? - value : value;
+      int  c = (bad || (digits == 0) || (v > Integer.MAX_VALUE)) ?
+         '?' : (char) v;
+
+      reset();
+
+      return c;
+   }
+
+   /**
+    * Discard any partial token.
+    */
+   public void reset() {
+      length = 0;
+      digits = 0;
+      value = 0;
+      negative = false;
+      bad = false;
+   }
+}
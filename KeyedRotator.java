@@ -0,0 +1,295 @@
+// package org.javacogs;
+
+import java.io.*;
+
+/**
+ * KeyedRotator applies a Vigenere-style keyed rotation to a stream of text.
+ * Letters and digits are rotated with the same class rules as ROT13N5:
+ * letters within A-Z and a-z, keeping case, and digits within 0-9. Each
+ * rotated character uses the shift of the next key character, so the key
+ * only advances over letters and digits. Other characters pass through.
+ * <br><br>
+ * Key characters A-Z and a-z give shifts 0-25; digits give shifts 0-9. For
+ * digits, a letter key shift is taken mod 10.
+ * <br><br>
+ * A rotator keeps its key position between calls, so a stream can be fed in
+ * chunks of any size. A lookup table per key position is built up front, so
+ * no work is done per character beyond a table lookup. Instances are not
+ * thread-safe.
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * encoder("KEY").transform("Hello 123") => "Rijvs 527"
+ * </blockquote>
+ */
+public final class KeyedRotator {
+   private static final int ASCII = 128;
+
+   /**
+    * 1 for the characters that are rotated (and so advance the key).
+    */
+   private static final byte[] ADVANCE = new byte[ASCII];
+
+   static {
+      for (int c = 0; c < ASCII; c ++) {
+         ADVANCE[c] = (byte) (Character.isLetterOrDigit((char) c) ? 1 : 0);
+      }
+   }
+
+   private final char[] tables;   // ASCII table for each key position.
+   private final int    keyLength;
+   private int          position;
+
+   /**
+    * Private constructor; use encoder() or decoder().
+    *
+    * @param key     Key.
+    * @param reverse True to rotate backward.
+    */
+   private KeyedRotator(String key, boolean reverse) {
+      int[] shifts = shifts(key);
+
+      keyLength = shifts.length;
+      tables = new char[keyLength * ASCII];
+
+      for (int k = 0; k < keyLength; k ++) {
+         int letterShift = reverse ? 26 - shifts[k] : shifts[k];
+         int digitShift = reverse ? 10 - (shifts[k] % 10) : shifts[k] % 10;
+         int base = k * ASCII;
+
+         for (int c = 0; c < ASCII; c ++) {
+            tables[base + c] = (char) c;
+         }
+
+         for (int i = 0; i < 26; i ++) {
+            tables[base + 'A' + i] = (char) ('A' + ((i + letterShift) % 26));
+            tables[base + 'a' + i] = (char) ('a' + ((i + letterShift) % 26));
+         }
+
+         for (int i = 0; i < 10; i ++) {
+            tables[base + '0' + i] = (char) ('0' + ((i + digitShift) % 10));
+         }
+      }
+   }
+
+   /**
+    * Get a rotator that encodes with the given key.
+    *
+    * @param key Key. Only its letters and digits are used.
+    *
+    * @return Rotator positioned at the start of the key.
+    *
+    * @throws IllegalArgumentException if the key has no letters or digits.
+    */
+   public static KeyedRotator encoder(String key) {
+      return new KeyedRotator(key, false);
+   }
+
+   /**
+    * Get a rotator that decodes text encoded with the given key.
+    *
+    * @param key Key. Only its letters and digits are used.
+    *
+    * @return Rotator positioned at the start of the key.
+    *
+    * @throws IllegalArgumentException if the key has no letters or digits.
+    */
+   public static KeyedRotator decoder(String key) {
+      return new KeyedRotator(key, true);
+   }
+
+   private static int[] shifts(String key) {
+      int[] shifts = new int[key.length()];
+      int   n = 0;
+
+      for (int i = 0; i < key.length(); i ++) {
+         char c = key.charAt(i);
+
+         if ((c >= 'A') && (c <= 'Z')) {
+            shifts[n ++] = c - 'A';
+         } else if ((c >= 'a') && (c <= 'z')) {
+            shifts[n ++] = c - 'a';
+         } else if ((c >= '0') && (c <= '9')) {
+            shifts[n ++] = c - '0';
+         }
+      }
+
+      if (n == 0) {
+         throw new IllegalArgumentException(
+            "key must contain a letter or digit");
+      }
+
+      int[] result = new int[n];
+
+      System.arraycopy(shifts, 0, result, 0, n);
+
+      return result;
+   }
+
+   // -------------------------------------------------------------------------
+   // position
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get the current key position.
+    *
+    * @return Index of the key character that will be used next.
+    */
+   public int getPosition() {
+      return position;
+   }
+
+   /**
+    * Set the current key position, such as to resume a stream.
+    *
+    * @param position Key position; taken mod the key length.
+    */
+   public void setPosition(long position) {
+      this.position = (int) (((position % keyLength) + keyLength) % keyLength);
+   }
+
+   /**
+    * Return to the start of the key.
+    */
+   public void reset() {
+      position = 0;
+   }
+
+   // -------------------------------------------------------------------------
+   // transform
+   // -------------------------------------------------------------------------
+
+   /**
+    * Transform the given string, continuing from the current key position.
+    *
+    * @param str String to transform.
+    *
+    * @return Transformed string. Empty string if str is null.
+    */
+   public String transform(String str) {
+      if (str == null) {
+         return "";
+      }
+
+      char[] arr = str.toCharArray();
+
+      transform(arr, 0, arr.length);
+
+      return new String(arr);
+   }
+
+   /**
+    * Transform part of a character array in place, continuing from the
+    * current key position.
+    *
+    * @param buf Characters to transform.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    */
+   public void transform(char[] buf, int off, int len) {
+      char[] t = tables;
+      int    k = position;
+      int    base = k * ASCII;
+      int    end = off + len;
+
+      for (int i = off; i < end; i ++) {
+         char c = buf[i];
+
+         if ((c < ASCII) && (ADVANCE[c] != 0)) {
+            buf[i] = t[base + c];
+
+            if (++ k == keyLength) {
+               k = 0;
+            }
+
+            base = k * ASCII;
+         }
+      }
+
+      position = k;
+   }
+
+   /**
+    * Transform part of a byte array in place, continuing from the current key
+    * position. Only ASCII bytes are changed, so UTF-8 and Latin-1 text stay
+    * valid.
+    *
+    * @param buf Bytes to transform.
+    * @param off Index of first byte.
+    * @param len Number of bytes.
+    */
+   public void transform(byte[] buf, int off, int len) {
+      char[] t = tables;
+      int    k = position;
+      int    base = k * ASCII;
+      int    end = off + len;
+
+      for (int i = off; i < end; i ++) {
+         int c = buf[i];
+
+         // Bytes 0x80-0xFF are negative, so they fail the first test.
+         if ((c >= 0) && (ADVANCE[c] != 0)) {
+            buf[i] = (byte) t[base + c];
+
+            if (++ k == keyLength) {
+               k = 0;
+            }
+
+            base = k * ASCII;
+         }
+      }
+
+      position = k;
+   }
+
+   /**
+    * Transform everything from the given reader to the given writer,
+    * continuing from the current key position. Neither stream is closed.
+    *
+    * @param in  Source of text.
+    * @param out Destination of transformed text.
+    *
+    * @return Number of characters transformed.
+    *
+    * @throws IOException if reading or writing fails.
+    */
+   public long transform(Reader in, Writer out) throws IOException {
+      char[] buf = new char[8192];
+      long   total = 0;
+      int    n;
+
+      while ((n = in.read(buf)) > -1) {
+         transform(buf, 0, n);
+         out.write(buf, 0, n);
+         total += n;
+      }
+
+      return total;
+   }
+
+   /**
+    * Transform everything from the given input stream to the given output
+    * stream, continuing from the current key position. Neither stream is
+    * closed.
+    *
+    * @param in  Source of bytes.
+    * @param out Destination of transformed bytes.
+    *
+    * @return Number of bytes transformed.
+    *
+    * @throws IOException if reading or writing fails.
+    */
+   public long transform(InputStream in, OutputStream out) throws IOException {
+      byte[] buf = new byte[8192];
+      long   total = 0;
+      int    n;
+
+      while ((n = in.read(buf)) > -1) {
+         transform(buf, 0, n);
+         out.write(buf, 0, n);
+         total += n;
+      }
+
+      return total;
+   }
+}
@@ -0,0 +1,369 @@
+// package org.javacogs;
+
+import java.nio.charset.*;
+
+/**
+ * Latin1 provides the StrUtil operations on text held as Latin-1 bytes, one
+ * byte per character, which is half the size of the same text in a char
+ * array. StrUtil uses these methods for strings whose characters are all
+ * below 0x100, and falls back to the char paths when it sees any other
+ * character.
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * byte[] b = Latin1.encode("A,B")<br>
+ * Latin1.split(b, 0, b.length, Latin1.encode(",")) => { "A", "B" }
+ * </blockquote>
+ *
+ * @see StrUtil
+ */
+public final class Latin1 {
+   private static final byte[] HEX_DIGITS = {
+      '0', '1', '2', '3', '4', '5', '6', '7',
+      '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+   };
+
+   /**
+    * Private constructor, so class cannot be instantiated.
+    */
+   private Latin1() {
+   }
+
+   // -------------------------------------------------------------------------
+   // conversion
+   // -------------------------------------------------------------------------
+
+   /**
+    * Test whether every character of a sequence is below 0x100.
+    *
+    * @param cs Sequence to test.
+    *
+    * @return True if cs can be held as Latin-1.
+    */
+   public static boolean isLatin1(CharSequence cs) {
+      for (int i = 0; i < cs.length(); i ++) {
+         if (cs.charAt(i) > 0xFF) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Encode a string as Latin-1 bytes.
+    *
+    * @param str String to encode.
+    *
+    * @return Latin-1 bytes; null if str has a character above 0xFF.
+    */
+   public static byte[] encode(String str) {
+      byte[] b = str.getBytes(StandardCharsets.ISO_8859_1);
+
+      // The encoder writes '?' for characters above 0xFF.
+      for (int i = 0; i < b.length; i ++) {
+         if ((b[i] == '?') && (str.charAt(i) != '?')) {
+            return null;
+         }
+      }
+
+      return b;
+   }
+
+   /**
+    * Decode Latin-1 bytes as a string.
+    *
+    * @param arr Bytes to decode.
+    * @param off Index of first byte.
+    * @param len Number of bytes.
+    *
+    * @return String.
+    */
+   public static String decode(byte[] arr, int off, int len) {
+      return new String(arr, off, len, StandardCharsets.ISO_8859_1);
+   }
+
+   // -------------------------------------------------------------------------
+   // search
+   // -------------------------------------------------------------------------
+
+   /**
+    * Find the index of a byte in part of an array.
+    *
+    * @param arr    Array to search.
+    * @param from   Index at which to start search.
+    * @param to     Index at which to end search.
+    * @param target Byte to find.
+    *
+    * @return Index of given byte. -1 if it is not found.
+    */
+   public static int indexOf(byte[] arr, int from, int to, byte target) {
+      for (int i = from; i < to; i ++) {
+         if (arr[i] == target) {
+            return i;
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * Find the index of a byte sequence in part of an array.
+    *
+    * @param arr    Array to search.
+    * @param from   Index at which to start search.
+    * @param to     Index at which to end search; a match must end at or
+    *               before it.
+    * @param target Bytes to find.
+    *
+    * @return Index of given bytes. -1 if they are not found or target is
+    *         empty.
+    */
+   public static int indexOf(byte[] arr, int from, int to, byte[] target) {
+      int tl = target.length;
+
+      if (tl == 0) {
+         return -1;
+      }
+
+      byte first = target[0];
+
+      for (int i = from; i <= to - tl; i ++) {
+         if (arr[i] == first) {
+            int j = 1;
+
+            while ((j < tl) && (arr[i + j] == target[j])) {
+               j ++;
+            }
+
+            if (j == tl) {
+               return i;
+            }
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * Count the occurrences of a byte in part of an array.
+    *
+    * @param arr    Array in which to count occurrences.
+    * @param from   Index at which to start.
+    * @param to     Index at which to end.
+    * @param target Byte to count.
+    *
+    * @return Number of occurrences.
+    */
+   public static int count(byte[] arr, int from, int to, byte target) {
+      int count = 0;
+
+      for (int i = from; i < to; i ++) {
+         if (arr[i] == target) {
+            count ++;
+         }
+      }
+
+      return count;
+   }
+
+   /**
+    * Count the occurrences of a byte sequence in part of an array. As with
+    * StrUtil.count(), occurrences may overlap.
+    *
+    * @param arr    Array in which to count occurrences.
+    * @param from   Index at which to start.
+    * @param to     Index at which to end.
+    * @param target Bytes to count.
+    *
+    * @return Number of occurrences.
+    */
+   public static int count(byte[] arr, int from, int to, byte[] target) {
+      int count = 0;
+      int i = indexOf(arr, from, to, target);
+
+      while (i > -1) {
+         count ++;
+         i = indexOf(arr, i + 1, to, target);
+      }
+
+      return count;
+   }
+
+   // -------------------------------------------------------------------------
+   // split
+   // -------------------------------------------------------------------------
+
+   /**
+    * Split part of an array into strings, as StrUtil.split() does. The text
+    * after the last delimiter is always included, even if it is empty.
+    *
+    * @param arr       Array to split.
+    * @param off       Index of first byte.
+    * @param len       Number of bytes.
+    * @param delimiter Delimiter on which to split; not empty.
+    *
+    * @return Array of strings.
+    */
+   public static String[] split(byte[] arr, int off, int len,
+         byte[] delimiter) {
+      return split(arr, off, len, delimiter, null);
+   }
+
+   /**
+    * Split part of an array into strings, as StrUtil.split() does, looking
+    * each one up in a token pool.
+    *
+    * @param arr       Array to split.
+    * @param off       Index of first byte.
+    * @param len       Number of bytes.
+    * @param delimiter Delimiter on which to split; not empty.
+    * @param pool      Pool in which to look up tokens; null for none.
+    *
+    * @return Array of strings.
+    */
+   public static String[] split(byte[] arr, int off, int len,
+         byte[] delimiter, TokenPool pool) {
+      int end = off + len;
+      int dl = delimiter.length;
+      int n = 1;
+
+      for (int i = indexOf(arr, off, end, delimiter); i > -1;
+            i = indexOf(arr, i + dl, end, delimiter)) {
+         n ++;
+      }
+
+      String[] fields = new String[n];
+      int      start = off;
+
+      for (int k = 0; k < n - 1; k ++) {
+         int i = indexOf(arr, start, end, delimiter);
+
+         fields[k] = (pool == null) ? decode(arr, start, i - start) :
+            pool.intern(arr, start, i - start);
+         start = i + dl;
+      }
+
+      fields[n - 1] = (pool == null) ? decode(arr, start, end - start) :
+         pool.intern(arr, start, end - start);
+
+      return fields;
+   }
+
+   // -------------------------------------------------------------------------
+   // rotation
+   // -------------------------------------------------------------------------
+
+   /**
+    * Transform part of an array in place with the ROTASCII algorithm, as
+    * StrUtil.rotAscii(char, int) does.
+    *
+    * @param arr  Array to transform.
+    * @param off  Index of first byte.
+    * @param len  Number of bytes.
+    * @param rlen Rotation length.
+    */
+   public static void rotAscii(byte[] arr, int off, int len, int rlen) {
+      int end = off + len;
+
+      for (int i = off; i < end; i ++) {
+         arr[i] = (byte) ((arr[i] & 0xFF) + rlen);
+      }
+   }
+
+   // -------------------------------------------------------------------------
+   // hex
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get the length of the hex encoding of part of an array.
+    *
+    * @param arr Bytes to be encoded.
+    * @param off Index of first byte.
+    * @param len Number of bytes.
+    *
+    * @return Number of bytes hexEncode() will write.
+    */
+   public static int hexEncodedLength(byte[] arr, int off, int len) {
+      int n = (len > 0) ? len - 1 : 0;    // Colons.
+
+      for (int i = off; i < off + len; i ++) {
+         n += ((arr[i] & 0xFF) > 0xF) ? 2 : 1;
+      }
+
+      return n;
+   }
+
+   /**
+    * Encode part of an array as a series of hexadecimal values delimited
+    * with colons, as StrUtil.hexEncode() does, writing ASCII to another
+    * array.
+    *
+    * @param src    Bytes to be encoded.
+    * @param srcOff Index of first source byte.
+    * @param len    Number of source bytes.
+    * @param dst    Array to receive the encoding; see hexEncodedLength().
+    * @param dstOff Index in dst at which to start.
+    *
+    * @return Index in dst after the last byte written.
+    */
+   public static int hexEncode(byte[] src, int srcOff, int len, byte[] dst,
+         int dstOff) {
+      int j = dstOff;
+
+      for (int i = srcOff; i < srcOff + len; i ++) {
+         int c = src[i] & 0xFF;
+
+         if (i > srcOff) {
+            dst[j ++] = ':';
+         }
+
+         if (c > 0xF) {
+            dst[j ++] = HEX_DIGITS[c >>> 4];
+         }
+
+         dst[j ++] = HEX_DIGITS[c & 0xF];
+      }
+
+      return j;
+   }
+
+   /**
+    * Decode part of an array that contains a series of hexadecimal values
+    * delimited with colons, as StrUtil.hexDecode() does, writing Latin-1 to
+    * another array. The result is never longer than the input, so the
+    * destination may be the source array if dstOff is not greater than
+    * srcOff.
+    *
+    * @param src    Bytes to be decoded.
+    * @param srcOff Index of first source byte.
+    * @param len    Number of source bytes.
+    * @param dst    Array to receive decoded bytes.
+    * @param dstOff Index in dst at which to start.
+    *
+    * @return Index in dst after the last byte written; -1 if a decoded
+    *         character is above 0xFF, in which case dst holds partial
+    *         output.
+    */
+   public static int hexDecode(byte[] src, int srcOff, int len, byte[] dst,
+         int dstOff) {
+      HexDecoder decoder = new HexDecoder();
+      int        j = dstOff;
+      int        c;
+
+      for (int i = srcOff; i <= srcOff + len; i ++) {
+         c = (i < srcOff + len) ? decoder.accept(src[i] & 0xFF) :
+            decoder.finish();
+
+         if (c != HexDecoder.NONE) {
+            if (c > 0xFF) {
+               return -1;
+            }
+
+            dst[j ++] = (byte) c;
+         }
+      }
+
+      return j;
+   }
+}
@@ -0,0 +1,386 @@
+// package org.javacogs;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * LineIndex records the offset of every newline ('\n') in a text, so that
+ * the start and end of any line can be found without scanning the text. The
+ * offsets are held in one int array.
+ * <br><br>
+ * A text with <i>n</i> newlines has <i>n</i> + 1 lines; the last line is
+ * empty if the text ends with a newline. Line <i>i</i> starts just after
+ * newline <i>i</i> - 1 and ends just before newline <i>i</i>.
+ * <br><br>
+ * After the text is edited, edit() rescans only the inserted text and
+ * shifts the offsets after it, so an index can follow a document as it
+ * changes. transform() and wrap() change a range of lines in a buffer and
+ * update the index in the same way.
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * LineIndex index = LineIndex.of("one\ntwo\nthree")<br>
+ * index.getLineCount() => 3<br>
+ * index.getLineStart(2) => 8
+ * </blockquote>
+ * Instances are not thread-safe.
+ */
+public final class LineIndex {
+   private int[] newlines;   // Ascending; only the first count are used.
+   private int   count;
+   private int   length;     // Length of the indexed text.
+
+   /**
+    * Private constructor; use of() or parallelOf().
+    */
+   private LineIndex(int[] newlines, int count, int length) {
+      this.newlines = newlines;
+      this.count = count;
+      this.length = length;
+   }
+
+   // -------------------------------------------------------------------------
+   // building
+   // -------------------------------------------------------------------------
+
+   /**
+    * Index a character sequence.
+    *
+    * @param cs Text to index.
+    *
+    * @return Index.
+    */
+   public static LineIndex of(CharSequence cs) {
+      int[] nl = scan(cs, 0, cs.length());
+
+      return new LineIndex(nl, nl.length, cs.length());
+   }
+
+   /**
+    * Index a character sequence, splitting inputs longer than
+    * Dispatch.parallelThreshold() across the common fork/join pool. A
+    * StringBuffer synchronizes every character read, so it is better indexed
+    * with of().
+    *
+    * @param cs Text to index.
+    *
+    * @return Index.
+    */
+   public static LineIndex parallelOf(final CharSequence cs) {
+      return invoke(cs.length(), new Scanner() {
+         public int[] range(int start, int end) {
+            return scan(cs, start, end);
+         }
+      });
+   }
+
+   /**
+    * Index part of a character array, splitting inputs longer than
+    * Dispatch.parallelThreshold() across the common fork/join pool. Offsets
+    * are relative to off.
+    *
+    * @param arr Text to index.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    *
+    * @return Index.
+    */
+   public static LineIndex parallelOf(final char[] arr, final int off,
+         int len) {
+      return invoke(len, new Scanner() {
+         public int[] range(int start, int end) {
+            int[] nl = new int[16];
+            int   n = 0;
+
+            for (int i = off + start; i < off + end; i ++) {
+               if (arr[i] == '\n') {
+                  if (n == nl.length) {
+                     nl = Arrays.copyOf(nl, n * 2);
+                  }
+
+                  nl[n ++] = i - off;
+               }
+            }
+
+            return Arrays.copyOf(nl, n);
+         }
+      });
+   }
+
+   private static LineIndex invoke(int length, Scanner scanner) {
+      int[] nl = ForkJoinPool.commonPool().invoke(
+         new ScanTask(0, length, Dispatch.parallelThreshold(), scanner));
+
+      return new LineIndex(nl, nl.length, length);
+   }
+
+   /**
+    * Find the newlines in part of a character sequence.
+    *
+    * @param cs    Text to scan.
+    * @param start Index of first character.
+    * @param end   Index after last character.
+    *
+    * @return Offsets of the newlines.
+    */
+   private static int[] scan(CharSequence cs, int start, int end) {
+      int[] nl = new int[16];
+      int   n = 0;
+
+      for (int i = start; i < end; i ++) {
+         if (cs.charAt(i) == '\n') {
+            if (n == nl.length) {
+               nl = Arrays.copyOf(nl, n * 2);
+            }
+
+            nl[n ++] = i;
+         }
+      }
+
+      return Arrays.copyOf(nl, n);
+   }
+
+   // -------------------------------------------------------------------------
+   // lookup
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get the number of lines.
+    *
+    * @return Line count; at least 1.
+    */
+   public int getLineCount() {
+      return count + 1;
+   }
+
+   /**
+    * Get the length of the indexed text.
+    *
+    * @return Text length.
+    */
+   public int getLength() {
+      return length;
+   }
+
+   /**
+    * Get the offset of the first character of a line.
+    *
+    * @param line Line number, from 0.
+    *
+    * @return Offset.
+    *
+    * @throws IndexOutOfBoundsException if there is no such line.
+    */
+   public int getLineStart(int line) {
+      checkLine(line);
+
+      return (line == 0) ? 0 : newlines[line - 1] + 1;
+   }
+
+   /**
+    * Get the offset just after the last character of a line, not counting
+    * its newline.
+    *
+    * @param line Line number, from 0.
+    *
+    * @return Offset.
+    *
+    * @throws IndexOutOfBoundsException if there is no such line.
+    */
+   public int getLineEnd(int line) {
+      checkLine(line);
+
+      return (line == count) ? length : newlines[line];
+   }
+
+   /**
+    * Get the line that contains an offset. A newline belongs to the line it
+    * ends.
+    *
+    * @param offset Offset, from 0 to the text length.
+    *
+    * @return Line number.
+    */
+   public int getLineOf(int offset) {
+      int i = Arrays.binarySearch(newlines, 0, count, offset);
+
+      return (i >= 0) ? i : -(i + 1);
+   }
+
+   /**
+    * Get the offsets of the newlines.
+    *
+    * @return Newline offsets, in ascending order.
+    */
+   public int[] toArray() {
+      return Arrays.copyOf(newlines, count);
+   }
+
+   private void checkLine(int line) {
+      if ((line < 0) || (line > count)) {
+         throw new IndexOutOfBoundsException("line " + line + " of " +
+            (count + 1));
+      }
+   }
+
+   // -------------------------------------------------------------------------
+   // editing
+   // -------------------------------------------------------------------------
+
+   /**
+    * Update the index after the text was edited. Only the inserted text is
+    * scanned; offsets after the edit are shifted.
+    *
+    * @param text     Text after the edit.
+    * @param offset   Offset of the edit.
+    * @param removed  Number of characters removed at offset.
+    * @param inserted Number of characters inserted at offset, in their
+    *                 place.
+    */
+   public void edit(CharSequence text, int offset, int removed,
+         int inserted) {
+      // Newlines from a up to b were in the removed text.
+      int   a = firstAtOrAfter(offset);
+      int   b = firstAtOrAfter(offset + removed);
+      int[] added = scan(text, offset, offset + inserted);
+      int   delta = inserted - removed;
+      int   tail = count - b;
+      int   n = a + added.length + tail;
+
+      if (n > newlines.length) {
+         newlines = Arrays.copyOf(newlines, Math.max(n, newlines.length * 2));
+      }
+
+      System.arraycopy(newlines, b, newlines, a + added.length, tail);
+      System.arraycopy(added, 0, newlines, a, added.length);
+
+      for (int i = a + added.length; i < n; i ++) {
+         newlines[i] += delta;
+      }
+
+      count = n;
+      length += delta;
+   }
+
+   /**
+    * Find the first newline at or after an offset.
+    *
+    * @param offset Offset.
+    *
+    * @return Index into the newline array; count if there is none.
+    */
+   private int firstAtOrAfter(int offset) {
+      int i = Arrays.binarySearch(newlines, 0, count, offset);
+
+      return (i >= 0) ? i : -(i + 1);
+   }
+
+   /**
+    * Transform a range of lines in a buffer in place. Only those lines are
+    * read and written; an empty range changes nothing.
+    *
+    * @param sb       Buffer this index describes.
+    * @param fromLine First line to transform.
+    * @param toLine   Line after the last line to transform.
+    * @param t        Transform to apply.
+    */
+   public void transform(StringBuffer sb, int fromLine, int toLine,
+         CharTransform t) {
+      if (fromLine >= toLine) {
+         return;
+      }
+
+      int    start = getLineStart(fromLine);
+      int    end = getLineEnd(toLine - 1);
+      char[] buf = new char[end - start];
+
+      sb.getChars(start, end, buf, 0);
+      t.apply(buf, 0, buf.length);
+      sb.replace(start, end, new String(buf));
+
+      // A transform may turn newlines into other characters or back.
+      edit(sb, start, buf.length, buf.length);
+   }
+
+   /**
+    * Wrap a range of lines in a buffer at the given width, as StrUtil.wrap()
+    * does. Only those lines are read and written; an empty range changes
+    * nothing.
+    *
+    * @param sb       Buffer this index describes.
+    * @param fromLine First line to wrap.
+    * @param toLine   Line after the last line to wrap.
+    * @param width    Width at which to wrap.
+    */
+   public void wrap(StringBuffer sb, int fromLine, int toLine, int width) {
+      if (fromLine >= toLine) {
+         return;
+      }
+
+      int    start = getLineStart(fromLine);
+      int    end = getLineEnd(toLine - 1);
+      String wrapped = StrUtil.wrap(sb.substring(start, end), width);
+
+      sb.replace(start, end, wrapped);
+      edit(sb, start, end - start, wrapped.length());
+   }
+
+   // -------------------------------------------------------------------------
+   // parallel scanning
+   // -------------------------------------------------------------------------
+
+   /**
+    * Scanner finds the newlines in a range of the input.
+    */
+   private interface Scanner {
+      /**
+       * Find the newlines in a range.
+       *
+       * @param start Index of first character.
+       * @param end   Index after last character.
+       *
+       * @return Offsets of the newlines.
+       */
+      int[] range(int start, int end);
+   }
+
+   /**
+    * ScanTask splits a scan in half until the halves are small, then
+    * concatenates the results in order.
+    */
+   private static final class ScanTask extends RecursiveTask<int[]> {
+      private static final long serialVersionUID = 1L;
+
+      private final int               start;
+      private final int               end;
+      private final int               threshold;
+      private final transient Scanner scanner;
+
+      ScanTask(int start, int end, int threshold, Scanner scanner) {
+         this.start = start;
+         this.end = end;
+         this.threshold = threshold;
+         this.scanner = scanner;
+      }
+
+      protected int[] compute() {
+         if (end - start <= threshold) {
+            return scanner.range(start, end);
+         }
+
+         int      mid = (start + end) >>> 1;
+         ScanTask left = new ScanTask(start, mid, threshold, scanner);
+         ScanTask right = new ScanTask(mid, end, threshold, scanner);
+
+         left.fork();
+
+         int[] r = right.compute();
+         int[] l = left.join();
+         int[] all = Arrays.copyOf(l, l.length + r.length);
+
+         System.arraycopy(r, 0, all, l.length, r.length);
+
+         return all;
+      }
+   }
+}
@@ -0,0 +1,649 @@
+// package org.javacogs;
+
+/**
+ * NumberParser parses ints, longs, doubles, and booleans from part of a
+ * character sequence without throwing exceptions or allocating. Each parse
+ * method returns a status and leaves the value in the parser, to be read
+ * with intValue(), longValue(), doubleValue(), or booleanValue(). The
+ * static toInt(), toLong(), toDouble(), and toBoolean() methods return a
+ * default instead of a status.
+ * <br><br>
+ * Integers are read as Integer.parseInt() and Long.parseLong() read them:
+ * an optional sign and decimal digits, with no spaces. Doubles are read as
+ * Double.parseDouble() reads decimal input, without the surrounding spaces,
+ * hexadecimal form, or type suffixes it also accepts. A double whose
+ * digits fit in 53 bits and whose decimal exponent is at most 22 is
+ * computed exactly in double arithmetic; others, which are rare in
+ * practice, are passed to Double.parseDouble(), which allocates.
+ * <br><br>
+ * The batch methods parse a delimited list of fields, split as
+ * StrUtil.split() splits, into a caller's array.
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * NumberParser p = new NumberParser()<br>
+ * p.parseInt("x=42", 2, 4) => NumberParser.OK<br>
+ * p.intValue() => 42
+ * </blockquote>
+ * Instances are not thread-safe; the static methods are.
+ */
+public final class NumberParser {
+   /**
+    * Status: the text is a number of the requested type.
+    */
+   public static final int OK = 0;
+
+   /**
+    * Status: the text is empty.
+    */
+   public static final int EMPTY = 1;
+
+   /**
+    * Status: the text is not a number.
+    */
+   public static final int INVALID = 2;
+
+   /**
+    * Status: the text is an integer too large for the requested type.
+    */
+   public static final int OVERFLOW = 3;
+
+   /**
+    * Largest long that a double holds exactly, plus one.
+    */
+   private static final long EXACT = 1L << 53;
+
+   /**
+    * Powers of ten that a double holds exactly.
+    */
+   private static final double[] POWERS = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+   };
+
+   private int     status;
+   private long    longValue;
+   private double  doubleValue;
+   private boolean booleanValue;
+
+   // -------------------------------------------------------------------------
+   // values
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get the status of the last parse.
+    *
+    * @return OK, EMPTY, INVALID, or OVERFLOW.
+    */
+   public int getStatus() {
+      return status;
+   }
+
+   /**
+    * Get the value of the last parseInt().
+    *
+    * @return Value; 0 if the parse failed.
+    */
+   public int intValue() {
+      return (int) longValue;
+   }
+
+   /**
+    * Get the value of the last parseLong().
+    *
+    * @return Value; 0 if the parse failed.
+    */
+   public long longValue() {
+      return longValue;
+   }
+
+   /**
+    * Get the value of the last parseDouble().
+    *
+    * @return Value; 0 if the parse failed.
+    */
+   public double doubleValue() {
+      return doubleValue;
+   }
+
+   /**
+    * Get the value of the last parseBoolean().
+    *
+    * @return Value; false if the parse failed.
+    */
+   public boolean booleanValue() {
+      return booleanValue;
+   }
+
+   // -------------------------------------------------------------------------
+   // parse
+   // -------------------------------------------------------------------------
+
+   /**
+    * Parse part of a sequence as a decimal int.
+    *
+    * @param cs    Sequence to parse.
+    * @param start Index of first character.
+    * @param end   Index after last character.
+    *
+    * @return Status; the value is read with intValue().
+    */
+   public int parseInt(CharSequence cs, int start, int end) {
+      return parseInteger(cs, start, end, Integer.MIN_VALUE,
+         Integer.MAX_VALUE);
+   }
+
+   /**
+    * Parse part of a sequence as a decimal long.
+    *
+    * @param cs    Sequence to parse.
+    * @param start Index of first character.
+    * @param end   Index after last character.
+    *
+    * @return Status; the value is read with longValue().
+    */
+   public int parseLong(CharSequence cs, int start, int end) {
+      return parseInteger(cs, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+   }
+
+   /**
+    * Parse part of a sequence as an integer within a range.
+    */
+   private int parseInteger(CharSequence cs, int start, int end, long min,
+         long max) {
+      long v = negated(cs, start, end, min, max);
+
+      if (v > 0) {
+         longValue = 0;
+
+         return status = (int) v;
+      }
+
+      longValue = (cs.charAt(start) == '-') ? v : -v;
+
+      return status = OK;
+   }
+
+   /**
+    * Parse part of a sequence as an integer within a range, accumulating
+    * it as a negative number, since the negative range is the larger.
+    *
+    * @param cs    Sequence to parse.
+    * @param start Index of first character.
+    * @param end   Index after last character.
+    * @param min   Smallest value allowed.
+    * @param max   Largest value allowed.
+    *
+    * @return Value, negated if it was not negative; EMPTY, INVALID, or
+    *         OVERFLOW, which are all above 0, if the text is not an
+    *         integer in range.
+    */
+   private static long negated(CharSequence cs, int start, int end,
+         long min, long max) {
+      if (start >= end) {
+         return EMPTY;
+      }
+
+      int     i = start;
+      char    c = cs.charAt(i);
+      boolean negative = (c == '-');
+
+      if (negative || (c == '+')) {
+         if (++ i == end) {
+            return INVALID;
+         }
+      }
+
+      long    limit = negative ? min : -max;
+      long    multmin = limit / 10;
+      long    v = 0;
+      boolean overflow = false;
+
+      for (; i < end; i ++) {
+         int d = digit(cs.charAt(i));
+
+         if (d < 0) {
+            return INVALID;
+         }
+
+         if ((v < multmin) || (v * 10 < limit + d)) {
+            overflow = true;
+         } else {
+            v = v * 10 - d;
+         }
+      }
+
+      return overflow ? OVERFLOW : v;
+   }
+
+   /**
+    * Parse part of a sequence as a double.
+    *
+    * @param cs    Sequence to parse.
+    * @param start Index of first character.
+    * @param end   Index after last character.
+    *
+    * @return Status; the value is read with doubleValue().
+    */
+   public int parseDouble(CharSequence cs, int start, int end) {
+      double v = doubleOrNaN(cs, start, end);
+
+      if (Double.isNaN(v) && (! isNaN(cs, start, end))) {
+         doubleValue = 0;
+
+         return status = (start >= end) ? EMPTY : INVALID;
+      }
+
+      doubleValue = v;
+
+      return status = OK;
+   }
+
+   /**
+    * Parse part of a sequence as a double.
+    *
+    * @param cs    Sequence to parse.
+    * @param start Index of first character.
+    * @param end   Index after last character.
+    *
+    * @return Value; NaN if the text is "NaN" or is not a double.
+    */
+   private static double doubleOrNaN(CharSequence cs, int start, int end) {
+      if (start >= end) {
+         return Double.NaN;
+      }
+
+      int     i = start;
+      char    c = cs.charAt(i);
+      boolean negative = (c == '-');
+
+      if (negative || (c == '+')) {
+         i ++;
+      }
+
+      if (matches(cs, i, end, "Infinity")) {
+         return negative ? Double.NEGATIVE_INFINITY :
+            Double.POSITIVE_INFINITY;
+      }
+
+      long    m = 0;          // Significant digits.
+      int     digits = 0;
+      int     scale = 0;      // Power of ten to apply to m.
+      boolean seen = false;   // Any mantissa digit at all.
+      boolean inexact = false;
+      boolean point = false;
+
+      for (; i < end; i ++) {
+         c = cs.charAt(i);
+
+         if ((c == '.') && (! point)) {
+            point = true;
+            continue;
+         }
+
+         int d = c - '0';
+
+         if ((d < 0) || (d > 9)) {
+            break;
+         }
+
+         seen = true;
+
+         if ((m == 0) && (d == 0)) {
+            // Leading zero; it only moves the point.
+            scale -= point ? 1 : 0;
+         } else if (digits < 18) {
+            m = m * 10 + d;
+            digits ++;
+            scale -= point ? 1 : 0;
+         } else {
+            // Too many digits to hold; keep their place value only.
+            inexact |= (d != 0);
+            scale += point ? 0 : 1;
+         }
+      }
+
+      if (! seen) {
+         return Double.NaN;
+      }
+
+      if ((i < end) && ((cs.charAt(i) == 'e') || (cs.charAt(i) == 'E'))) {
+         int     exp = 0;
+         boolean expNegative = false;
+
+         if ((++ i < end) &&
+               ((cs.charAt(i) == '-') || (cs.charAt(i) == '+'))) {
+            expNegative = (cs.charAt(i) == '-');
+            i ++;
+         }
+
+         if (i == end) {
+            return Double.NaN;
+         }
+
+         for (; i < end; i ++) {
+            int d = cs.charAt(i) - '0';
+
+            if ((d < 0) || (d > 9)) {
+               return Double.NaN;
+            }
+
+            // Far beyond the double range; stop before int overflow.
+            if (exp < 100000) {
+               exp = exp * 10 + d;
+            }
+         }
+
+         scale += expNegative ? -exp : exp;
+      }
+
+      if (i != end) {
+         return Double.NaN;
+      }
+
+      if (inexact || (m >= EXACT) || (scale < -22) || (scale > 22)) {
+         // The text is known to be valid, so this can't throw.
+         return Double.parseDouble(cs.subSequence(start, end).toString());
+      }
+
+      // Both m and the power of ten are exact, so one rounding gives the
+      // correctly rounded result.
+      double v = (scale < 0) ? m / POWERS[-scale] : m * POWERS[scale];
+
+      return negative ? -v : v;
+   }
+
+   /**
+    * Test whether part of a sequence is "NaN", with an optional sign.
+    */
+   private static boolean isNaN(CharSequence cs, int start, int end) {
+      if ((start < end) &&
+            ((cs.charAt(start) == '-') || (cs.charAt(start) == '+'))) {
+         start ++;
+      }
+
+      return matches(cs, start, end, "NaN");
+   }
+
+   /**
+    * Parse part of a sequence as a boolean: "true" or "false", ignoring
+    * case.
+    *
+    * @param cs    Sequence to parse.
+    * @param start Index of first character.
+    * @param end   Index after last character.
+    *
+    * @return Status; the value is read with booleanValue().
+    */
+   public int parseBoolean(CharSequence cs, int start, int end) {
+      booleanValue = false;
+
+      if (start >= end) {
+         return status = EMPTY;
+      }
+
+      if (matchesIgnoreCase(cs, start, end, "true")) {
+         booleanValue = true;
+
+         return status = OK;
+      }
+
+      return status = matchesIgnoreCase(cs, start, end, "false") ? OK :
+         INVALID;
+   }
+
+   // -------------------------------------------------------------------------
+   // defaults
+   // -------------------------------------------------------------------------
+
+   /**
+    * Parse part of a sequence as a decimal int.
+    *
+    * @param cs    Sequence to parse; may be null.
+    * @param start Index of first character.
+    * @param end   Index after last character.
+    * @param def   Value if the text is not an int.
+    *
+    * @return Value.
+    */
+   public static int toInt(CharSequence cs, int start, int end, int def) {
+      return (int) toInteger(cs, start, end, Integer.MIN_VALUE,
+         Integer.MAX_VALUE, def);
+   }
+
+   /**
+    * Parse part of a sequence as a decimal long.
+    *
+    * @param cs    Sequence to parse; may be null.
+    * @param start Index of first character.
+    * @param end   Index after last character.
+    * @param def   Value if the text is not a long.
+    *
+    * @return Value.
+    */
+   public static long toLong(CharSequence cs, int start, int end, long def) {
+      return toInteger(cs, start, end, Long.MIN_VALUE, Long.MAX_VALUE, def);
+   }
+
+   private static long toInteger(CharSequence cs, int start, int end,
+         long min, long max, long def) {
+      long v = (cs == null) ? INVALID : negated(cs, start, end, min, max);
+
+      return (v > 0) ? def : (cs.charAt(start) == '-') ? v : -v;
+   }
+
+   /**
+    * Parse part of a sequence as a double.
+    *
+    * @param cs    Sequence to parse; may be null.
+    * @param start Index of first character.
+    * @param end   Index after last character.
+    * @param def   Value if the text is not a double.
+    *
+    * @return Value.
+    */
+   public static double toDouble(CharSequence cs, int start, int end,
+         double def) {
+      if (cs == null) {
+         return def;
+      }
+
+      double v = doubleOrNaN(cs, start, end);
+
+      return (Double.isNaN(v) && (! isNaN(cs, start, end))) ? def : v;
+   }
+
+   /**
+    * Get the boolean value of part of a sequence as StrUtil.booleanValue()
+    * does: "true", ignoring case, is true and anything else false.
+    *
+    * @param cs    Sequence to read; may be null.
+    * @param start Index of first character.
+    * @param end   Index after last character.
+    *
+    * @return Value.
+    */
+   public static boolean toBoolean(CharSequence cs, int start, int end) {
+      return (cs != null) && matchesIgnoreCase(cs, start, end, "true");
+   }
+
+   // -------------------------------------------------------------------------
+   // batch
+   // -------------------------------------------------------------------------
+
+   /**
+    * Parse a delimited list of ints into an array. Fields that are not ints
+    * are stored as def, and the status is that of the first such field. If
+    * the array is too small, the fields that fit are stored and the rest
+    * only counted.
+    *
+    * @param cs        Sequence to parse.
+    * @param start     Index of first character.
+    * @param end       Index after last character.
+    * @param delimiter Delimiter between fields.
+    * @param values    Array to receive the values.
+    * @param def       Value for fields that are not ints.
+    *
+    * @return Number of fields; 0 if the range is empty.
+    *
+    * @throws IllegalArgumentException if delimiter is null or empty.
+    */
+   public int parseInts(CharSequence cs, int start, int end,
+         String delimiter, int[] values, int def) {
+      SearchPlan plan = SearchPlanCache.get(delimiter);
+      int        first = OK;
+      int        n = 0;
+
+      for (int at = start; (start < end) && (at <= end); n ++) {
+         int to = field(plan, cs, at, end);
+
+         if (n < values.length) {
+            int s = parseInt(cs, at, to);
+
+            values[n] = (s == OK) ? (int) longValue : def;
+            first = (first == OK) ? s : first;
+         }
+
+         at = to + delimiter.length();
+      }
+
+      status = first;
+
+      return n;
+   }
+
+   /**
+    * Parse a delimited list of longs into an array, as parseInts() does.
+    *
+    * @param cs        Sequence to parse.
+    * @param start     Index of first character.
+    * @param end       Index after last character.
+    * @param delimiter Delimiter between fields.
+    * @param values    Array to receive the values.
+    * @param def       Value for fields that are not longs.
+    *
+    * @return Number of fields; 0 if the range is empty.
+    *
+    * @throws IllegalArgumentException if delimiter is null or empty.
+    */
+   public int parseLongs(CharSequence cs, int start, int end,
+         String delimiter, long[] values, long def) {
+      SearchPlan plan = SearchPlanCache.get(delimiter);
+      int        first = OK;
+      int        n = 0;
+
+      for (int at = start; (start < end) && (at <= end); n ++) {
+         int to = field(plan, cs, at, end);
+
+         if (n < values.length) {
+            int s = parseLong(cs, at, to);
+
+            values[n] = (s == OK) ? longValue : def;
+            first = (first == OK) ? s : first;
+         }
+
+         at = to + delimiter.length();
+      }
+
+      status = first;
+
+      return n;
+   }
+
+   /**
+    * Parse a delimited list of doubles into an array, as parseInts() does.
+    *
+    * @param cs        Sequence to parse.
+    * @param start     Index of first character.
+    * @param end       Index after last character.
+    * @param delimiter Delimiter between fields.
+    * @param values    Array to receive the values.
+    * @param def       Value for fields that are not doubles.
+    *
+    * @return Number of fields; 0 if the range is empty.
+    *
+    * @throws IllegalArgumentException if delimiter is null or empty.
+    */
+   public int parseDoubles(CharSequence cs, int start, int end,
+         String delimiter, double[] values, double def) {
+      SearchPlan plan = SearchPlanCache.get(delimiter);
+      int        first = OK;
+      int        n = 0;
+
+      for (int at = start; (start < end) && (at <= end); n ++) {
+         int to = field(plan, cs, at, end);
+
+         if (n < values.length) {
+            int s = parseDouble(cs, at, to);
+
+            values[n] = (s == OK) ? doubleValue : def;
+            first = (first == OK) ? s : first;
+         }
+
+         at = to + delimiter.length();
+      }
+
+      status = first;
+
+      return n;
+   }
+
+   /**
+    * Find the end of the field that starts at an index.
+    */
+   private static int field(SearchPlan plan, CharSequence cs, int at,
+         int end) {
+      int i = plan.indexOf(cs, at, end);
+
+      return (i < 0) ? end : i;
+   }
+
+   // -------------------------------------------------------------------------
+   // characters
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get the value of a decimal digit. ASCII digits are tested first; other
+    * Unicode digits are accepted, as Integer.parseInt() accepts them.
+    *
+    * @param c Character.
+    *
+    * @return Digit value; -1 if c is not a digit.
+    */
+   private static int digit(char c) {
+      int d = c - '0';
+
+      return ((d >= 0) && (d <= 9)) ? d :
+         (c < 0x80) ? -1 : Character.digit(c, 10);
+   }
+
+   private static boolean matches(CharSequence cs, int start, int end,
+         String word) {
+      if (end - start != word.length()) {
+         return false;
+      }
+
+      for (int i = 0; i < word.length(); i ++) {
+         if (cs.charAt(start + i) != word.charAt(i)) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   private static boolean matchesIgnoreCase(CharSequence cs, int start,
+         int end, String word) {
+      if (end - start != word.length()) {
+         return false;
+      }
+
+      for (int i = 0; i < word.length(); i ++) {
+         if (! CaseFold.equals(cs.charAt(start + i), word.charAt(i))) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+}
@@ -0,0 +1,359 @@
+// package org.javacogs;
+
+/**
+ * PairParser reads back the key/value strings that StrUtil.merge() writes,
+ * such as "A=1,B=2", in one pass and without making substrings. Pairs are
+ * separated by the string delimiter and split at the first pair delimiter,
+ * following the StrUtil.split() rules: delimiters are matched left to right
+ * without overlapping, and the text after the last string delimiter is
+ * always a pair. An empty input has no pairs; a pair with no pair delimiter
+ * has an empty value.
+ * <br><br>
+ * Pairs are reported as bounds in the parsed text: key start, key end,
+ * value start, and value end. parse() writes them to a caller's array or
+ * hands them to a Visitor. index() builds an open-addressing table over
+ * the bounds, so single keys can be looked up without making a string for
+ * every key.
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * PairParser p = new PairParser("=", ",")<br>
+ * p.index("A=1,B=2").get("B") => "2"
+ * </blockquote>
+ * A parser holds no state between calls, so one instance may be shared by
+ * threads.
+ *
+ * @see StrUtil#merge(String[], String[], String, String)
+ */
+public final class PairParser {
+   /**
+    * Number of ints parse() writes for each pair.
+    */
+   public static final int BOUNDS = 4;
+
+   private final SearchPlan pairPlan;
+   private final SearchPlan strPlan;
+   private final int        pairLength;
+   private final int        strLength;
+
+   /**
+    * Create a parser.
+    *
+    * @param pairDelim Delimiter between the key and value of each pair.
+    * @param strDelim  Delimiter between pairs.
+    *
+    * @throws IllegalArgumentException if a delimiter is null or empty.
+    */
+   public PairParser(String pairDelim, String strDelim) {
+      this.pairPlan = SearchPlanCache.get(pairDelim);
+      this.strPlan = SearchPlanCache.get(strDelim);
+      this.pairLength = pairDelim.length();
+      this.strLength = strDelim.length();
+   }
+
+   /**
+    * Visitor receives the pairs found by parse().
+    */
+   public interface Visitor {
+      /**
+       * Accept one pair.
+       *
+       * @param cs         Text being parsed.
+       * @param keyStart   Index of the key's first character.
+       * @param keyEnd     Index after the key's last character.
+       * @param valueStart Index of the value's first character.
+       * @param valueEnd   Index after the value's last character.
+       */
+      void pair(CharSequence cs, int keyStart, int keyEnd, int valueStart,
+         int valueEnd);
+   }
+
+   // -------------------------------------------------------------------------
+   // parse
+   // -------------------------------------------------------------------------
+
+   /**
+    * Parse a merged string, writing the bounds of each pair to an array:
+    * key start, key end, value start, and value end. If the array is too
+    * small, the pairs that fit are written and the rest only counted.
+    *
+    * @param cs     Text to parse.
+    * @param bounds Array to receive BOUNDS ints per pair.
+    *
+    * @return Number of pairs in cs.
+    */
+   public int parse(CharSequence cs, final int[] bounds) {
+      return parse(cs, new Visitor() {
+         private int j;
+
+         public void pair(CharSequence cs, int keyStart, int keyEnd,
+               int valueStart, int valueEnd) {
+            if (j + BOUNDS <= bounds.length) {
+               bounds[j ++] = keyStart;
+               bounds[j ++] = keyEnd;
+               bounds[j ++] = valueStart;
+               bounds[j ++] = valueEnd;
+            }
+         }
+      });
+   }
+
+   /**
+    * Parse a merged string, passing each pair to a visitor in order.
+    *
+    * @param cs      Text to parse.
+    * @param visitor Visitor to receive the pairs; null to only count them.
+    *
+    * @return Number of pairs in cs.
+    */
+   public int parse(CharSequence cs, Visitor visitor) {
+      int length = cs.length();
+      int n = 0;
+
+      if (length == 0) {
+         return 0;
+      }
+
+      for (int start = 0; start <= length; n ++) {
+         int end = strPlan.indexOf(cs, start);
+
+         if (end < 0) {
+            end = length;
+         }
+
+         int split = pairPlan.indexOf(cs, start, end);
+
+         if (visitor != null) {
+            if (split < 0) {
+               visitor.pair(cs, start, end, end, end);
+            } else {
+               visitor.pair(cs, start, split, split + pairLength, end);
+            }
+         }
+
+         start = end + strLength;
+      }
+
+      return n;
+   }
+
+   /**
+    * Count the pairs in a merged string.
+    *
+    * @param cs Text to parse.
+    *
+    * @return Number of pairs in cs.
+    */
+   public int count(CharSequence cs) {
+      return parse(cs, (Visitor) null);
+   }
+
+   /**
+    * Parse a merged string into a table of its pairs.
+    *
+    * @param cs Text to parse.
+    *
+    * @return Index.
+    */
+   public Index index(CharSequence cs) {
+      int[] bounds = new int[BOUNDS * 8];
+      int   n = parse(cs, bounds);
+
+      if (n * BOUNDS > bounds.length) {
+         bounds = new int[n * BOUNDS];
+         parse(cs, bounds);
+      }
+
+      return new Index(cs, bounds, n);
+   }
+
+   // -------------------------------------------------------------------------
+   // Index
+   // -------------------------------------------------------------------------
+
+   /**
+    * Index is an open-addressing hash table over the pairs of a merged
+    * string. Keys are hashed and compared in place, so a lookup makes no
+    * strings. If a key occurs more than once, the first pair wins.
+    */
+   public static final class Index {
+      private final CharSequence cs;
+      private final int[]        bounds;
+      private final int          size;
+      private final int[]        slots;    // Pair number + 1; 0 is empty.
+      private final int          mask;
+
+      private Index(CharSequence cs, int[] bounds, int size) {
+         int capacity = Integer.highestOneBit(Math.max(1, size) * 2) * 2;
+
+         this.cs = cs;
+         this.bounds = bounds;
+         this.size = size;
+         this.slots = new int[capacity];
+         this.mask = capacity - 1;
+
+         for (int p = 0; p < size; p ++) {
+            int s = bounds[p * BOUNDS];
+            int e = bounds[p * BOUNDS + 1];
+            int k = hash(cs, s, e) & mask;
+
+            while ((slots[k] != 0) &&
+                  (! keyEquals(slots[k] - 1, cs, s, e))) {
+               k = (k + 1) & mask;
+            }
+
+            if (slots[k] == 0) {
+               slots[k] = p + 1;
+            }
+         }
+      }
+
+      /**
+       * Get the number of pairs.
+       *
+       * @return Pair count, including pairs with repeated keys.
+       */
+      public int size() {
+         return size;
+      }
+
+      /**
+       * Find the pair with a key.
+       *
+       * @param key Key to find.
+       *
+       * @return Pair number, from 0; -1 if there is no such key.
+       */
+      public int find(CharSequence key) {
+         int n = key.length();
+         int k = hash(key, 0, n) & mask;
+
+         while (slots[k] != 0) {
+            if (keyEquals(slots[k] - 1, key, 0, n)) {
+               return slots[k] - 1;
+            }
+
+            k = (k + 1) & mask;
+         }
+
+         return -1;
+      }
+
+      /**
+       * Test whether a key is present.
+       *
+       * @param key Key to find.
+       *
+       * @return True if some pair has the key.
+       */
+      public boolean containsKey(CharSequence key) {
+         return find(key) >= 0;
+      }
+
+      /**
+       * Get the value for a key.
+       *
+       * @param key Key to find.
+       *
+       * @return Value; null if there is no such key.
+       */
+      public String get(CharSequence key) {
+         int p = find(key);
+
+         return (p < 0) ? null :
+            cs.subSequence(getValueStart(p), getValueEnd(p)).toString();
+      }
+
+      /**
+       * Get the index of a pair's key in the parsed text.
+       *
+       * @param p Pair number, from 0.
+       *
+       * @return Index of the key's first character.
+       */
+      public int getKeyStart(int p) {
+         return bound(p, 0);
+      }
+
+      /**
+       * Get the end of a pair's key in the parsed text.
+       *
+       * @param p Pair number, from 0.
+       *
+       * @return Index after the key's last character.
+       */
+      public int getKeyEnd(int p) {
+         return bound(p, 1);
+      }
+
+      /**
+       * Get the index of a pair's value in the parsed text.
+       *
+       * @param p Pair number, from 0.
+       *
+       * @return Index of the value's first character.
+       */
+      public int getValueStart(int p) {
+         return bound(p, 2);
+      }
+
+      /**
+       * Get the end of a pair's value in the parsed text.
+       *
+       * @param p Pair number, from 0.
+       *
+       * @return Index after the value's last character.
+       */
+      public int getValueEnd(int p) {
+         return bound(p, 3);
+      }
+
+      private int bound(int p, int which) {
+         if ((p < 0) || (p >= size)) {
+            throw new IndexOutOfBoundsException("pair " + p + " of " + size);
+         }
+
+         return bounds[p * BOUNDS + which];
+      }
+
+      /**
+       * Compare the key of a pair with part of a sequence.
+       */
+      private boolean keyEquals(int p, CharSequence key, int start, int end) {
+         int s = bounds[p * BOUNDS];
+         int n = bounds[p * BOUNDS + 1] - s;
+
+         if (n != end - start) {
+            return false;
+         }
+
+         for (int i = 0; i < n; i ++) {
+            if (cs.charAt(s + i) != key.charAt(start + i)) {
+               return false;
+            }
+         }
+
+         return true;
+      }
+   }
+
+   /**
+    * Hash part of a sequence as String.hashCode() hashes a string, with the
+    * high bits mixed into the low ones for table indexing.
+    *
+    * @param cs    Sequence to hash.
+    * @param start Index of first character.
+    * @param end   Index after last character.
+    *
+    * @return Hash code.
+    */
+   static int hash(CharSequence cs, int start, int end) {
+      int h = 0;
+
+      for (int i = start; i < end; i ++) {
+         h = 31 * h + cs.charAt(i);
+      }
+
+      return h ^ (h >>> 16);
+   }
+}
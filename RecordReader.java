@@ -0,0 +1,608 @@
+// package org.javacogs;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * RecordReader reads delimited records, one per line, from a stream, and
+ * splits each into fields on a delimiter the way StrUtil.split() does:
+ * delimiters may be several characters long, are matched left to right
+ * without overlapping, and the text after the last one is always a field,
+ * even if it is empty. A line may end with "\n" or "\r\n".
+ * <br><br>
+ * No strings or arrays are made per record. Records are read into one
+ * shared buffer, and each field is described by its offset and length in
+ * that buffer. field() returns a cursor over a field that is reused for
+ * every record, and the get methods parse a field into a primitive on
+ * demand with NumberParser, which does not allocate. The buffer grows
+ * only to hold the longest record, so memory use does not depend on the
+ * length of the input.
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * RecordReader r = new RecordReader(reader, "::")<br>
+ * while (r.next()) {<br>
+ * &nbsp;&nbsp;&nbsp;total += r.getLong(2);<br>
+ * }
+ * </blockquote>
+ * Fields and cursors are valid only until the next call to next(). Instances
+ * are not thread-safe.
+ *
+ * @see StrUtil#split(String, String)
+ */
+public final class RecordReader implements Closeable {
+   /**
+    * Initial size of the buffer, in characters.
+    */
+   public static final int BUFFER_SIZE = 1 << 16;
+
+   private final Reader     in;
+   private final String     delimiter;
+   private final SearchPlan plan;
+
+   private char[]  buf;
+   private int     pos;        // Start of unread text.
+   private int     limit;      // End of text in buf.
+   private boolean eof;
+
+   private int[]   starts = new int[16];
+   private int[]   ends = new int[16];
+   private int     fields;
+   private Field[] cursors = new Field[0];
+   private long    records;
+
+   private final NumberParser numbers = new NumberParser();
+
+   /**
+    * Create a reader over a character stream.
+    *
+    * @param in        Stream to read.
+    * @param delimiter Delimiter between fields.
+    *
+    * @throws IllegalArgumentException if delimiter is null or empty.
+    */
+   public RecordReader(Reader in, String delimiter) {
+      if ((delimiter == null) || (delimiter.length() == 0)) {
+         throw new IllegalArgumentException("delimiter is empty");
+      }
+
+      this.in = in;
+      this.delimiter = delimiter;
+      this.plan = SearchPlanCache.get(delimiter);
+      this.buf = new char[BUFFER_SIZE];
+   }
+
+   /**
+    * Create a reader over a channel of encoded text. Malformed input is
+    * replaced, not reported.
+    *
+    * @param in        Channel to read.
+    * @param cs        Encoding of the text.
+    * @param delimiter Delimiter between fields.
+    *
+    * @throws IllegalArgumentException if delimiter is null or empty.
+    */
+   public RecordReader(ReadableByteChannel in, Charset cs, String delimiter) {
+      this(Channels.newReader(in, cs.newDecoder()
+         .onMalformedInput(CodingErrorAction.REPLACE)
+         .onUnmappableCharacter(CodingErrorAction.REPLACE), -1), delimiter);
+   }
+
+   // -------------------------------------------------------------------------
+   // reading
+   // -------------------------------------------------------------------------
+
+   /**
+    * Read the next record.
+    *
+    * @return True if a record was read; false at the end of the input.
+    *
+    * @throws IOException if the input can't be read.
+    */
+   public boolean next() throws IOException {
+      int from = pos;
+      int nl;
+
+      while ((nl = indexOfNewline(from)) < 0) {
+         if (eof) {
+            if (pos == limit) {
+               fields = 0;
+
+               return false;
+            }
+
+            nl = limit;
+            break;
+         }
+
+         from = limit - pos;
+         fill();
+         from += pos;
+      }
+
+      int start = pos;
+      int end = ((nl > start) && (buf[nl - 1] == '\r')) ? nl - 1 : nl;
+
+      pos = Math.min(nl + 1, limit);
+      split(start, end);
+      records ++;
+
+      return true;
+   }
+
+   /**
+    * Find the next newline in the buffer.
+    *
+    * @param from Index at which to start.
+    *
+    * @return Index of the newline; -1 if there is none before limit.
+    */
+   private int indexOfNewline(int from) {
+      for (int i = from; i < limit; i ++) {
+         if (buf[i] == '\n') {
+            return i;
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * Move the unread text to the front of the buffer, growing it if it is
+    * full, and read more.
+    *
+    * @throws IOException if the input can't be read.
+    */
+   private void fill() throws IOException {
+      if (pos > 0) {
+         System.arraycopy(buf, pos, buf, 0, limit - pos);
+         limit -= pos;
+         pos = 0;
+      }
+
+      if (limit == buf.length) {
+         buf = Arrays.copyOf(buf, buf.length * 2);
+      }
+
+      int n = in.read(buf, limit, buf.length - limit);
+
+      if (n < 0) {
+         eof = true;
+      } else {
+         limit += n;
+      }
+   }
+
+   /**
+    * Split a record into fields.
+    *
+    * @param start Index of the record in buf.
+    * @param end   Index after the record.
+    */
+   private void split(int start, int end) {
+      int dl = delimiter.length();
+      int n = 0;
+      int at = start;
+      int i;
+
+      while ((i = find(at, end)) >= 0) {
+         add(n ++, at, i);
+         at = i + dl;
+      }
+
+      add(n ++, at, end);
+      fields = n;
+   }
+
+   private int find(int start, int end) {
+      if (delimiter.length() > 1) {
+         return plan.indexOf(buf, start, end);
+      }
+
+      char c = delimiter.charAt(0);
+
+      for (int i = start; i < end; i ++) {
+         if (buf[i] == c) {
+            return i;
+         }
+      }
+
+      return -1;
+   }
+
+   private void add(int field, int start, int end) {
+      if (field == starts.length) {
+         starts = Arrays.copyOf(starts, field * 2);
+         ends = Arrays.copyOf(ends, field * 2);
+      }
+
+      starts[field] = start;
+      ends[field] = end;
+   }
+
+   /**
+    * Close the underlying stream.
+    *
+    * @throws IOException if the stream can't be closed.
+    */
+   public void close() throws IOException {
+      in.close();
+   }
+
+   // -------------------------------------------------------------------------
+   // fields
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get the number of records read so far.
+    *
+    * @return Record count; also the number of the current record, from 1.
+    */
+   public long getRecordCount() {
+      return records;
+   }
+
+   /**
+    * Get the number of fields in the current record.
+    *
+    * @return Field count; 0 if there is no current record.
+    */
+   public int getFieldCount() {
+      return fields;
+   }
+
+   /**
+    * Get the buffer that holds the current record. The buffer may be
+    * replaced by next().
+    *
+    * @return Buffer.
+    */
+   public char[] getBuffer() {
+      return buf;
+   }
+
+   /**
+    * Get the offset of a field in the buffer.
+    *
+    * @param i Field number, from 0.
+    *
+    * @return Offset of the field's first character.
+    *
+    * @throws IndexOutOfBoundsException if there is no such field.
+    */
+   public int getOffset(int i) {
+      check(i);
+
+      return starts[i];
+   }
+
+   /**
+    * Get the length of a field.
+    *
+    * @param i Field number, from 0.
+    *
+    * @return Number of characters in the field.
+    *
+    * @throws IndexOutOfBoundsException if there is no such field.
+    */
+   public int getLength(int i) {
+      check(i);
+
+      return ends[i] - starts[i];
+   }
+
+   /**
+    * Get a cursor over a field of the current record. The same cursor is
+    * returned for field i of every record, so it should not be kept past
+    * the next call to next().
+    *
+    * @param i Field number, from 0.
+    *
+    * @return Cursor.
+    *
+    * @throws IndexOutOfBoundsException if there is no such field.
+    */
+   public Field field(int i) {
+      check(i);
+
+      if (i >= cursors.length) {
+         int n = cursors.length;
+
+         cursors = Arrays.copyOf(cursors, Math.max(i + 1, n * 2));
+
+         for (int k = n; k < cursors.length; k ++) {
+            cursors[k] = new Field(k);
+         }
+      }
+
+      return cursors[i];
+   }
+
+   /**
+    * Get a field as a new string.
+    *
+    * @param i Field number, from 0.
+    *
+    * @return Field text.
+    *
+    * @throws IndexOutOfBoundsException if there is no such field.
+    */
+   public String getString(int i) {
+      check(i);
+
+      return new String(buf, starts[i], ends[i] - starts[i]);
+   }
+
+   /**
+    * Get a field as a string from a token pool, so that a value repeated
+    * across records is one string rather than one per record. A value
+    * already in the pool makes no new string.
+    *
+    * @param i    Field number, from 0.
+    * @param pool Pool in which to look up the field.
+    *
+    * @return Field text.
+    *
+    * @throws IndexOutOfBoundsException if there is no such field.
+    */
+   public String getString(int i, TokenPool pool) {
+      check(i);
+
+      return pool.intern(buf, starts[i], ends[i] - starts[i]);
+   }
+
+   /**
+    * Parse a field as a decimal int, as Integer.parseInt() does.
+    *
+    * @param i Field number, from 0.
+    *
+    * @return Value.
+    *
+    * @throws NumberFormatException if the field is not an int.
+    * @throws IndexOutOfBoundsException if there is no such field.
+    */
+   public int getInt(int i) {
+      Field f = field(i);
+
+      if (numbers.parseInt(f, 0, f.length()) != NumberParser.OK) {
+         throw bad(i);
+      }
+
+      return numbers.intValue();
+   }
+
+   /**
+    * Parse a field as a decimal int, without throwing an exception if it is
+    * not one.
+    *
+    * @param i   Field number, from 0.
+    * @param def Value if the field is not an int.
+    *
+    * @return Value.
+    *
+    * @throws IndexOutOfBoundsException if there is no such field.
+    */
+   public int getInt(int i, int def) {
+      Field f = field(i);
+
+      return NumberParser.toInt(f, 0, f.length(), def);
+   }
+
+   /**
+    * Parse a field as a decimal long, as Long.parseLong() does.
+    *
+    * @param i Field number, from 0.
+    *
+    * @return Value.
+    *
+    * @throws NumberFormatException if the field is not a long.
+    * @throws IndexOutOfBoundsException if there is no such field.
+    */
+   public long getLong(int i) {
+      Field f = field(i);
+
+      if (numbers.parseLong(f, 0, f.length()) != NumberParser.OK) {
+         throw bad(i);
+      }
+
+      return numbers.longValue();
+   }
+
+   /**
+    * Parse a field as a decimal long, without throwing an exception if it
+    * is not one.
+    *
+    * @param i   Field number, from 0.
+    * @param def Value if the field is not a long.
+    *
+    * @return Value.
+    *
+    * @throws IndexOutOfBoundsException if there is no such field.
+    */
+   public long getLong(int i, long def) {
+      Field f = field(i);
+
+      return NumberParser.toLong(f, 0, f.length(), def);
+   }
+
+   /**
+    * Parse a field as a double, as NumberParser.parseDouble() does.
+    *
+    * @param i Field number, from 0.
+    *
+    * @return Value.
+    *
+    * @throws NumberFormatException if the field is not a double.
+    * @throws IndexOutOfBoundsException if there is no such field.
+    */
+   public double getDouble(int i) {
+      Field f = field(i);
+
+      if (numbers.parseDouble(f, 0, f.length()) != NumberParser.OK) {
+         throw bad(i);
+      }
+
+      return numbers.doubleValue();
+   }
+
+   /**
+    * Parse a field as a double, without throwing an exception if it is not
+    * one.
+    *
+    * @param i   Field number, from 0.
+    * @param def Value if the field is not a double.
+    *
+    * @return Value.
+    *
+    * @throws IndexOutOfBoundsException if there is no such field.
+    */
+   public double getDouble(int i, double def) {
+      Field f = field(i);
+
+      return NumberParser.toDouble(f, 0, f.length(), def);
+   }
+
+   /**
+    * Get a field as a boolean, as StrUtil.booleanValue() does: "true",
+    * ignoring case, is true and anything else false.
+    *
+    * @param i Field number, from 0.
+    *
+    * @return Value.
+    *
+    * @throws IndexOutOfBoundsException if there is no such field.
+    */
+   public boolean getBoolean(int i) {
+      Field f = field(i);
+
+      return NumberParser.toBoolean(f, 0, f.length());
+   }
+
+   private NumberFormatException bad(int i) {
+      return new NumberFormatException("For input string: \"" +
+         getString(i) + "\"");
+   }
+
+   private void check(int i) {
+      if ((i < 0) || (i >= fields)) {
+         throw new IndexOutOfBoundsException("field " + i + " of " + fields);
+      }
+   }
+
+   // -------------------------------------------------------------------------
+   // Field
+   // -------------------------------------------------------------------------
+
+   /**
+    * Field is a cursor over one field of the current record, read in place
+    * from the reader's buffer.
+    */
+   public final class Field implements CharSequence {
+      private final int index;
+
+      private Field(int index) {
+         this.index = index;
+      }
+
+      /**
+       * Get the offset of the field in the reader's buffer.
+       *
+       * @return Offset.
+       */
+      public int getOffset() {
+         return RecordReader.this.getOffset(index);
+      }
+
+      public int length() {
+         return getLength(index);
+      }
+
+      public char charAt(int i) {
+         int s = starts[index];
+
+         if ((index >= fields) || (i < 0) || (i >= ends[index] - s)) {
+            throw new IndexOutOfBoundsException("index " + i);
+         }
+
+         return buf[s + i];
+      }
+
+      public CharSequence subSequence(int start, int end) {
+         return toString().substring(start, end);
+      }
+
+      /**
+       * Test whether the field holds the same characters as a sequence.
+       *
+       * @param cs Sequence to compare.
+       *
+       * @return True if the characters are equal.
+       */
+      public boolean contentEquals(CharSequence cs) {
+         int n = length();
+         int s = starts[index];
+
+         if (cs.length() != n) {
+            return false;
+         }
+
+         for (int i = 0; i < n; i ++) {
+            if (buf[s + i] != cs.charAt(i)) {
+               return false;
+            }
+         }
+
+         return true;
+      }
+
+      /**
+       * Parse the field as an int.
+       *
+       * @return Value.
+       *
+       * @see RecordReader#getInt(int)
+       */
+      public int intValue() {
+         return getInt(index);
+      }
+
+      /**
+       * Parse the field as a long.
+       *
+       * @return Value.
+       *
+       * @see RecordReader#getLong(int)
+       */
+      public long longValue() {
+         return getLong(index);
+      }
+
+      /**
+       * Parse the field as a double.
+       *
+       * @return Value.
+       *
+       * @see RecordReader#getDouble(int)
+       */
+      public double doubleValue() {
+         return getDouble(index);
+      }
+
+      /**
+       * Parse the field as a boolean.
+       *
+       * @return Value.
+       *
+       * @see RecordReader#getBoolean(int)
+       */
+      public boolean booleanValue() {
+         return getBoolean(index);
+      }
+
+      public String toString() {
+         return getString(index);
+      }
+   }
+}
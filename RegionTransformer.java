@@ -0,0 +1,533 @@
+// package org.javacogs;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * RegionTransformer transforms one large file on all cores by splitting it
+ * into fixed-size regions. Bytes are read as Latin-1, as by FileTransformer.
+ * <br><br>
+ * Transforms that preserve length, such as ROT13, ROT13N5, and ROTASCII,
+ * transform every region independently and write it back at the same file
+ * position, in whatever order the regions finish. Operations that change
+ * length, such as hex encoding and wrapping, transform regions in parallel
+ * but write them in order, with a bounded number of regions in flight.
+ * <br><br>
+ * Usage:
+ * <blockquote>
+ * java RegionTransformer <i>transform</i>|hexencode|wrap:<i>width</i>
+ * <i>in</i> <i>out</i>
+ * </blockquote>
+ *
+ * @see FileTransformer
+ */
+public final class RegionTransformer {
+   /**
+    * Default size of each region.
+    */
+   public static final int REGION_SIZE = 4 << 20;
+
+   /**
+    * Region is the work done on one region of a length-changing operation.
+    */
+   private interface Region {
+      /**
+       * Transform one region.
+       *
+       * @param in    Region contents, ready to read.
+       * @param index Index of the region in the file.
+       *
+       * @return Output for the region, ready to read.
+       */
+      ByteBuffer apply(ByteBuffer in, long index);
+   }
+
+   /**
+    * Private constructor, so class cannot be instantiated.
+    */
+   private RegionTransformer() {
+   }
+
+   // -------------------------------------------------------------------------
+   // length-preserving transforms
+   // -------------------------------------------------------------------------
+
+   /**
+    * Transform a file on one thread per core.
+    *
+    * @param in  File to read.
+    * @param out File to write. It is created or truncated, unless it is
+    *            in, which is transformed in place.
+    * @param t   Transform to apply.
+    *
+    * @return Number of bytes transformed.
+    *
+    * @throws IOException if reading or writing fails.
+    */
+   public static long transform(Path in, Path out, CharTransform t)
+         throws IOException {
+      return transform(in, out, t, REGION_SIZE, cores());
+   }
+
+   /**
+    * Transform a file.
+    *
+    * @param in          File to read.
+    * @param out         File to write. It is created or truncated, unless
+    *                    it is in, which is transformed in place.
+    * @param t           Transform to apply.
+    * @param regionSize  Size of each region.
+    * @param parallelism Number of threads.
+    *
+    * @return Number of bytes transformed.
+    *
+    * @throws IOException if reading or writing fails.
+    */
+   public static long transform(Path in, Path out, final CharTransform t,
+         final int regionSize, int parallelism) throws IOException {
+      boolean inPlace = sameFile(in, out);
+
+      // In place, one channel both reads and writes, and nothing is
+      // truncated; each region is written back over itself.
+      try (final FileChannel src = inPlace ?
+               FileChannel.open(in, StandardOpenOption.READ,
+                  StandardOpenOption.WRITE) :
+               FileChannel.open(in, StandardOpenOption.READ);
+            final FileChannel dst = inPlace ? src : FileChannel.open(out,
+               StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+               StandardOpenOption.TRUNCATE_EXISTING)) {
+         final long                    size = src.size();
+         final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(
+            () -> ByteBuffer.allocateDirect(regionSize));
+         ExecutorService               pool =
+            Executors.newFixedThreadPool(parallelism);
+         List<Future<Integer>>         tasks = new ArrayList<Future<Integer>>();
+
+         try {
+            for (long at = 0; at < size; at += regionSize) {
+               final long pos = at;
+
+               tasks.add(pool.submit(() -> {
+                  ByteBuffer buf = buffers.get();
+
+                  buf.clear();
+                  buf.limit((int) Math.min(regionSize, size - pos));
+                  read(src, buf, pos);
+                  buf.flip();
+                  t.apply(buf);
+                  write(dst, buf, pos);
+
+                  return buf.limit();
+               }));
+            }
+
+            for (Future<Integer> task : tasks) {
+               FileTransformer.await(task);
+            }
+         } finally {
+            pool.shutdownNow();
+         }
+
+         return size;
+      }
+   }
+
+   // -------------------------------------------------------------------------
+   // length-changing operations
+   // -------------------------------------------------------------------------
+
+   /**
+    * Hex-encode a file, as StrUtil.hexEncode() does, on one thread per core.
+    *
+    * @param in  File to read.
+    * @param out File to write. It is created or truncated.
+    *
+    * @return Number of bytes written.
+    *
+    * @throws IOException if reading or writing fails.
+    * @throws IllegalArgumentException if out is the same file as in.
+    */
+   public static long hexEncode(Path in, Path out) throws IOException {
+      return hexEncode(in, out, REGION_SIZE, cores());
+   }
+
+   /**
+    * Hex-encode a file, as StrUtil.hexEncode() does.
+    *
+    * @param in          File to read.
+    * @param out         File to write. It is created or truncated.
+    * @param regionSize  Size of each region.
+    * @param parallelism Number of threads.
+    *
+    * @return Number of bytes written.
+    *
+    * @throws IOException if reading or writing fails.
+    * @throws IllegalArgumentException if out is the same file as in.
+    */
+   public static long hexEncode(Path in, Path out, int regionSize,
+         int parallelism) throws IOException {
+      return reassemble(in, out, new Region() {
+         public ByteBuffer apply(ByteBuffer region, long index) {
+            ByteBuffer buf = ByteBuffer.allocate(region.remaining() * 3 + 1);
+
+            // Every region but the first continues the previous one.
+            if (index > 0) {
+               buf.put((byte) ':');
+            }
+
+            StrUtil.hexEncode(region, buf);
+            buf.flip();
+
+            return buf;
+         }
+      }, regionSize, parallelism);
+   }
+
+   /**
+    * Wrap a file at the given width, as StrUtil.wrap() does, on one thread
+    * per core.
+    *
+    * @param in    File to read.
+    * @param out   File to write. It is created or truncated.
+    * @param width Width at which to wrap; at least 1.
+    *
+    * @return Number of bytes written.
+    *
+    * @throws IOException if reading or writing fails.
+    * @throws IllegalArgumentException if out is the same file as in.
+    */
+   public static long wrap(Path in, Path out, int width) throws IOException {
+      return wrap(in, out, width, REGION_SIZE, cores());
+   }
+
+   /**
+    * Wrap a file at the given width, as StrUtil.wrap() does. A first pass
+    * finds the last newline in each region, from which the column at the
+    * start of every region follows; the regions are then wrapped in
+    * parallel.
+    *
+    * @param in          File to read.
+    * @param out         File to write. It is created or truncated.
+    * @param width       Width at which to wrap; at least 1.
+    * @param regionSize  Size of each region.
+    * @param parallelism Number of threads.
+    *
+    * @return Number of bytes written.
+    *
+    * @throws IOException if reading or writing fails.
+    * @throws IllegalArgumentException if out is the same file as in.
+    */
+   public static long wrap(Path in, Path out, final int width,
+         int regionSize, int parallelism) throws IOException {
+      if (width < 1) {
+         throw new IllegalArgumentException("width must be at least 1");
+      }
+
+      // Characters since the last newline at the start of each region.
+      final long[] across = columns(in, regionSize, parallelism);
+
+      return reassemble(in, out, new Region() {
+         public ByteBuffer apply(ByteBuffer region, long index) {
+            int        n = region.remaining();
+            ByteBuffer buf = ByteBuffer.allocate(n + (n / width) + 2);
+            long       start = across[(int) index];
+            int        colsAcross = (int) (start % width);
+            boolean    pending = (start > 0) && (colsAcross == 0);
+
+            while (region.hasRemaining()) {
+               byte c = region.get();
+
+               // A newline is only inserted if another character follows,
+               // so it is written when that character arrives.
+               if (pending) {
+                  buf.put((byte) '\n');
+                  pending = false;
+               }
+
+               buf.put(c);
+               colsAcross ++;
+
+               if (c == '\n') {
+                  colsAcross = 0;
+               }
+
+               if (colsAcross == width) {
+                  pending = true;
+                  colsAcross = 0;
+               }
+            }
+
+            buf.flip();
+
+            return buf;
+         }
+      }, regionSize, parallelism);
+   }
+
+   /**
+    * Find the number of characters since the last newline at the start of
+    * every region of a file.
+    *
+    * @param in          File to read.
+    * @param regionSize  Size of each region.
+    * @param parallelism Number of threads.
+    *
+    * @return Count for each region.
+    *
+    * @throws IOException if reading fails.
+    */
+   private static long[] columns(Path in, final int regionSize,
+         int parallelism) throws IOException {
+      try (final FileChannel src = FileChannel.open(in,
+               StandardOpenOption.READ)) {
+         final long         size = src.size();
+         int                regions = regions(size, regionSize);
+         long[]             across = new long[regions];
+         ExecutorService    pool = Executors.newFixedThreadPool(parallelism);
+         List<Future<Long>> tasks = new ArrayList<Future<Long>>();
+
+         try {
+            for (int i = 0; i < regions; i ++) {
+               final long at = (long) i * regionSize;
+               final long end = Math.min(at + regionSize, size);
+
+               tasks.add(pool.submit(() -> lastNewline(src, at, end)));
+            }
+
+            long count = 0;
+
+            for (int i = 0; i < regions; i ++) {
+               long at = (long) i * regionSize;
+               long end = Math.min(at + regionSize, size);
+               long last = FileTransformer.await(tasks.get(i));
+
+               across[i] = count;
+               count = (last < 0) ? count + (end - at) : end - last - 1;
+            }
+         } finally {
+            pool.shutdownNow();
+         }
+
+         return across;
+      }
+   }
+
+   /**
+    * Find the last newline in part of a file, reading backwards from the
+    * end, since in text it is usually close to the end.
+    *
+    * @param src File to read.
+    * @param at  Start of the part.
+    * @param end End of the part.
+    *
+    * @return File position of the newline; -1 if there is none.
+    *
+    * @throws IOException if reading fails.
+    */
+   private static long lastNewline(FileChannel src, long at, long end)
+         throws IOException {
+      ByteBuffer buf = ByteBuffer.allocate(8192);
+
+      while (end > at) {
+         long from = Math.max(at, end - buf.capacity());
+
+         buf.clear();
+         buf.limit((int) (end - from));
+         read(src, buf, from);
+
+         for (int i = buf.limit() - 1; i >= 0; i --) {
+            if (buf.get(i) == '\n') {
+               return from + i;
+            }
+         }
+
+         end = from;
+      }
+
+      return -1;
+   }
+
+   /**
+    * Transform regions in parallel and write the results in order, keeping
+    * a few regions per thread in flight.
+    *
+    * @param in          File to read.
+    * @param out         File to write. It is created or truncated.
+    * @param region      Work to do on each region.
+    * @param regionSize  Size of each region.
+    * @param parallelism Number of threads.
+    *
+    * @return Number of bytes written.
+    *
+    * @throws IOException if reading or writing fails.
+    * @throws IllegalArgumentException if out is the same file as in.
+    */
+   private static long reassemble(Path in, Path out, final Region region,
+         final int regionSize, int parallelism) throws IOException {
+      if (sameFile(in, out)) {
+         throw new IllegalArgumentException(
+            "Cannot change the length of a file in place: " + in);
+      }
+
+      try (final FileChannel src = FileChannel.open(in,
+               StandardOpenOption.READ);
+            FileChannel dst = FileChannel.open(out,
+               StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+               StandardOpenOption.TRUNCATE_EXISTING)) {
+         final long                size = src.size();
+         int                       regions = regions(size, regionSize);
+         int                       window = parallelism * 2;
+         ExecutorService           pool =
+            Executors.newFixedThreadPool(parallelism);
+         Deque<Future<ByteBuffer>> pending =
+            new ArrayDeque<Future<ByteBuffer>>();
+         long                      pos = 0;
+
+         try {
+            for (int i = 0; i <= regions; i ++) {
+               // Write the oldest region once the window is full, and drain
+               // the window at the end.
+               while ((pending.size() >= window) ||
+                     ((i == regions) && ! pending.isEmpty())) {
+                  ByteBuffer buf = FileTransformer.await(pending.poll());
+                  int        n = buf.remaining();
+
+                  write(dst, buf, pos);
+                  pos += n;
+               }
+
+               if (i < regions) {
+                  final int  index = i;
+                  final long at = (long) i * regionSize;
+
+                  pending.add(pool.submit(() -> {
+                     ByteBuffer buf = ByteBuffer.allocate(
+                        (int) Math.min(regionSize, size - at));
+
+                     read(src, buf, at);
+                     buf.flip();
+
+                     return region.apply(buf, index);
+                  }));
+               }
+            }
+         } finally {
+            pool.shutdownNow();
+         }
+
+         return pos;
+      }
+   }
+
+   // -------------------------------------------------------------------------
+   // helpers
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get the number of regions in a file.
+    *
+    * @param size       File size.
+    * @param regionSize Size of each region.
+    *
+    * @return Number of regions.
+    */
+   private static int regions(long size, int regionSize) {
+      long n = (size + regionSize - 1) / regionSize;
+
+      if (n > Integer.MAX_VALUE) {
+         throw new IllegalArgumentException("regionSize is too small");
+      }
+
+      return (int) n;
+   }
+
+   /**
+    * Fill a buffer from a file position.
+    *
+    * @param src File to read.
+    * @param buf Buffer to fill up to its limit.
+    * @param at  File position.
+    *
+    * @throws IOException if reading fails or the file ends early.
+    */
+   private static void read(FileChannel src, ByteBuffer buf, long at)
+         throws IOException {
+      while (buf.hasRemaining()) {
+         if (src.read(buf, at + buf.position()) < 0) {
+            throw new EOFException();
+         }
+      }
+   }
+
+   /**
+    * Write a buffer at a file position.
+    *
+    * @param dst File to write.
+    * @param buf Buffer to write from position to limit.
+    * @param at  File position.
+    *
+    * @throws IOException if writing fails.
+    */
+   private static void write(FileChannel dst, ByteBuffer buf, long at)
+         throws IOException {
+      long start = at - buf.position();
+
+      while (buf.hasRemaining()) {
+         dst.write(buf, start + buf.position());
+      }
+   }
+
+   /**
+    * Test whether two paths name the same existing file.
+    *
+    * @param in  Input file.
+    * @param out Output file, which need not exist.
+    *
+    * @return True if out exists and is the same file as in.
+    *
+    * @throws IOException if the files cannot be compared.
+    */
+   private static boolean sameFile(Path in, Path out) throws IOException {
+      return Files.exists(out) && Files.isSameFile(in, out);
+   }
+
+   private static int cores() {
+      return Runtime.getRuntime().availableProcessors();
+   }
+
+   /**
+    * Transform a file from the command line.
+    *
+    * @param args Operation, input file, output file.
+    */
+   public static void main(String[] args) throws IOException {
+      if (args.length != 3) {
+         System.err.println(
+            "usage: RegionTransformer transform|hexencode|wrap:N in out");
+         System.exit(2);
+      }
+
+      Path   in = Paths.get(args[1]);
+      Path   out = Paths.get(args[2]);
+      String op = args[0];
+      long   start = System.nanoTime();
+      long   bytes;
+
+      if (op.equals("hexencode")) {
+         bytes = hexEncode(in, out);
+      } else if (op.startsWith("wrap:")) {
+         bytes = wrap(in, out, Integer.parseInt(op.substring(5)));
+      } else {
+         bytes = transform(in, out, CharTransform.forName(op));
+      }
+
+      double secs = (System.nanoTime() - start) / 1e9;
+
+      System.out.println(bytes + " bytes in " + secs + " s (" +
+         (long) (bytes / secs / (1 << 20)) + " MB/s)");
+   }
+}
@@ -0,0 +1,129 @@
+// package org.javacogs;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * ScratchPool is a small, bounded, concurrent pool of char arrays for use as
+ * scratch space. Unlike a ThreadLocal buffer, which is kept for as long as
+ * its thread lives, a pooled buffer is held only while it is in use, so a
+ * pool stays the same size whether it serves a few platform threads or
+ * millions of short-lived virtual threads.
+ * <br><br>
+ * The pool is an array of slots. take() and give() each look at a few slots
+ * from a random start and claim or fill one with a single compare-and-set;
+ * they neither lock nor allocate, except that take() allocates a new buffer
+ * when it finds none big enough. A buffer given back to a full pool, or one
+ * longer than the maximum length, is left to the garbage collector.
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * char[] buf = ScratchPool.SHARED.take(n);<br>
+ * try {<br>
+ * &nbsp;&nbsp;&nbsp;...<br>
+ * } finally {<br>
+ * &nbsp;&nbsp;&nbsp;ScratchPool.SHARED.give(buf);<br>
+ * }
+ * </blockquote>
+ */
+public final class ScratchPool {
+   /**
+    * Pool shared by the library: two slots per processor, buffers up to
+    * 64K characters.
+    */
+   public static final ScratchPool SHARED = new ScratchPool(
+      2 * Runtime.getRuntime().availableProcessors(), 65536);
+
+   /**
+    * Length of newly allocated buffers, unless more is asked for.
+    */
+   private static final int MIN_LENGTH = 256;
+
+   /**
+    * Number of slots take() and give() look at.
+    */
+   private static final int PROBES = 8;
+
+   private final AtomicReferenceArray<char[]> slots;
+   private final int                          mask;
+   private final int                          maxLength;
+
+   /**
+    * Create a pool.
+    *
+    * @param size      Number of buffers the pool can hold; rounded up to a
+    *                  power of two.
+    * @param maxLength Length of the longest buffer the pool will hold.
+    */
+   public ScratchPool(int size, int maxLength) {
+      int n = (size <= 1) ? 1 : Integer.highestOneBit(size - 1) << 1;
+
+      this.slots = new AtomicReferenceArray<char[]>(n);
+      this.mask = n - 1;
+      this.maxLength = maxLength;
+   }
+
+   /**
+    * Take a buffer from the pool, or allocate one if the pool has none big
+    * enough. The buffer should be given back when it is no longer in use.
+    *
+    * @param n Minimum length.
+    *
+    * @return Buffer at least n characters long, with undefined contents.
+    */
+   public char[] take(int n) {
+      int start = ThreadLocalRandom.current().nextInt();
+      int probes = Math.min(PROBES, mask + 1);
+
+      for (int i = 0; i < probes; i ++) {
+         int    k = (start + i) & mask;
+         char[] buf = slots.get(k);
+
+         if ((buf != null) && (buf.length >= n) &&
+               slots.compareAndSet(k, buf, null)) {
+            return buf;
+         }
+      }
+
+      return new char[Math.max(n, MIN_LENGTH)];
+   }
+
+   /**
+    * Give a buffer back to the pool. The caller must not use it again.
+    *
+    * @param buf Buffer from take().
+    */
+   public void give(char[] buf) {
+      if (buf.length > maxLength) {
+         return;
+      }
+
+      int start = ThreadLocalRandom.current().nextInt();
+      int probes = Math.min(PROBES, mask + 1);
+
+      for (int i = 0; i < probes; i ++) {
+         int k = (start + i) & mask;
+
+         if ((slots.get(k) == null) && slots.compareAndSet(k, null, buf)) {
+            return;
+         }
+      }
+   }
+
+   /**
+    * Get the number of buffers in the pool.
+    *
+    * @return Buffers not in use.
+    */
+   public int getSize() {
+      int n = 0;
+
+      for (int k = 0; k <= mask; k ++) {
+         if (slots.get(k) != null) {
+            n ++;
+         }
+      }
+
+      return n;
+   }
+}
@@ -0,0 +1,526 @@
+// package org.javacogs;
+
+import java.nio.*;
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+/**
+ * SearchPlan is a string target compiled for repeated searching. It uses the
+ * Boyer-Moore-Horspool algorithm with a 256-entry skip table indexed by the
+ * low byte of each character; characters that share a low byte share the
+ * smaller skip, so the table stays small for any alphabet.
+ * <br><br>
+ * Plans are immutable and thread-safe. Compiling a plan costs a pass over
+ * the target, so callers that search for the same targets many times should
+ * get plans from SearchPlanCache.
+ * <br><br>
+ * Every match can be enumerated in one pass with forEach(), findAll(), or
+ * stream(), either overlapping ("aa" is found twice in "aaa") or not (once).
+ * lastIndexOf() runs the same algorithm from right to left, with a second
+ * skip table.
+ * <br><br>
+ * A plan compiled to ignore case holds its target folded by CaseFold, and
+ * folds each character of the text as it is compared, so the text is never
+ * copied. Its skip tables are indexed by folded characters.
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * SearchPlan.of("lo").indexOf("Hello, world", 0) => 3
+ * </blockquote>
+ *
+ * @see SearchPlanCache
+ */
+public final class SearchPlan {
+   private final String  target;
+   private final boolean ignoreCase;
+   private final char[]  pattern;                 // Folded if ignoreCase.
+   private final int[]   skip = new int[256];
+   private final int[]   rskip = new int[256];    // For searching backward.
+
+   /**
+    * Private constructor; use compile() or of().
+    */
+   private SearchPlan(String target, boolean ignoreCase) {
+      int m = target.length();
+
+      this.target = target;
+      this.ignoreCase = ignoreCase;
+      this.pattern = (ignoreCase ? CaseFold.fold(target) : target)
+         .toCharArray();
+
+      for (int i = 0; i < skip.length; i ++) {
+         skip[i] = m;
+         rskip[i] = m;
+      }
+
+      // Later characters overwrite earlier ones, so each entry ends up with
+      // the smallest shift of any character with that low byte.
+      for (int j = 0; j < m - 1; j ++) {
+         skip[pattern[j] & 0xFF] = m - 1 - j;
+      }
+
+      for (int j = m - 1; j > 0; j --) {
+         rskip[pattern[j] & 0xFF] = j;
+      }
+   }
+
+   /**
+    * Compile a plan without caching it.
+    *
+    * @param target String to find.
+    *
+    * @return Plan.
+    *
+    * @throws IllegalArgumentException if target is null or empty.
+    */
+   public static SearchPlan compile(String target) {
+      return compile(target, false);
+   }
+
+   /**
+    * Compile a plan without caching it.
+    *
+    * @param target     String to find.
+    * @param ignoreCase True to match regardless of case.
+    *
+    * @return Plan.
+    *
+    * @throws IllegalArgumentException if target is null or empty.
+    */
+   public static SearchPlan compile(String target, boolean ignoreCase) {
+      if ((target == null) || (target.length() == 0)) {
+         throw new IllegalArgumentException("target is null or empty");
+      }
+
+      return new SearchPlan(target, ignoreCase);
+   }
+
+   /**
+    * Get a plan from the shared cache, compiling it if necessary.
+    *
+    * @param target String to find.
+    *
+    * @return Plan.
+    *
+    * @throws IllegalArgumentException if target is null or empty.
+    */
+   public static SearchPlan of(String target) {
+      return SearchPlanCache.get(target);
+   }
+
+   /**
+    * Get a plan from the shared cache, compiling it if necessary.
+    *
+    * @param target     String to find.
+    * @param ignoreCase True to match regardless of case.
+    *
+    * @return Plan.
+    *
+    * @throws IllegalArgumentException if target is null or empty.
+    */
+   public static SearchPlan of(String target, boolean ignoreCase) {
+      return SearchPlanCache.get(target, ignoreCase);
+   }
+
+   /**
+    * Get the string this plan finds.
+    *
+    * @return Target string.
+    */
+   public String getTarget() {
+      return target;
+   }
+
+   /**
+    * Test whether this plan ignores case.
+    *
+    * @return True if matches ignore case.
+    */
+   public boolean isIgnoreCase() {
+      return ignoreCase;
+   }
+
+   /**
+    * Get the length of the target.
+    *
+    * @return Target length.
+    */
+   public int length() {
+      return pattern.length;
+   }
+
+   /**
+    * Find the target in a character sequence.
+    *
+    * @param cs    Sequence to search.
+    * @param start Index at which to start search.
+    *
+    * @return Index of the target. -1 if it is not found.
+    */
+   public int indexOf(CharSequence cs, int start) {
+      return indexOf(cs, start, cs.length());
+   }
+
+   /**
+    * Find the target in part of a character sequence.
+    *
+    * @param cs    Sequence to search.
+    * @param start Index at which to start search.
+    * @param end   Index at which to end search; a match must end at or
+    *              before it.
+    *
+    * @return Index of the target. -1 if it is not found.
+    */
+   public int indexOf(CharSequence cs, int start, int end) {
+      if (ignoreCase) {
+         return indexOfFolded(cs, start, end);
+      }
+
+      int  m = pattern.length;
+      char last = pattern[m - 1];
+
+      for (int i = Math.max(start, 0) + m - 1; i < end; ) {
+         char c = cs.charAt(i);
+
+         if (c == last) {
+            int j = m - 2;
+            int k = i - 1;
+
+            while ((j >= 0) && (cs.charAt(k) == pattern[j])) {
+               j --;
+               k --;
+            }
+
+            if (j < 0) {
+               return k + 1;
+            }
+         }
+
+         i += skip[c & 0xFF];
+      }
+
+      return -1;
+   }
+
+   /**
+    * Find the target in part of a character array.
+    *
+    * @param arr   Array to search.
+    * @param start Index at which to start search.
+    * @param end   Index at which to end search; a match must end at or
+    *              before it.
+    *
+    * @return Index of the target. -1 if it is not found.
+    */
+   public int indexOf(char[] arr, int start, int end) {
+      if (ignoreCase) {
+         return indexOfFolded(CharBuffer.wrap(arr), start, end);
+      }
+
+      int  m = pattern.length;
+      char last = pattern[m - 1];
+
+      for (int i = Math.max(start, 0) + m - 1; i < end; ) {
+         char c = arr[i];
+
+         if (c == last) {
+            int j = m - 2;
+            int k = i - 1;
+
+            while ((j >= 0) && (arr[k] == pattern[j])) {
+               j --;
+               k --;
+            }
+
+            if (j < 0) {
+               return k + 1;
+            }
+         }
+
+         i += skip[c & 0xFF];
+      }
+
+      return -1;
+   }
+
+   /**
+    * Find the last occurrence of the target that starts at or before the
+    * given index, as String.lastIndexOf(String, int) does.
+    *
+    * @param cs    Sequence to search.
+    * @param start Greatest index at which a match may start.
+    *
+    * @return Index of the target. -1 if it is not found.
+    */
+   public int lastIndexOf(CharSequence cs, int start) {
+      if (ignoreCase) {
+         return lastIndexOfFolded(cs, start);
+      }
+
+      int  m = pattern.length;
+      char first = pattern[0];
+
+      for (int i = Math.min(start, cs.length() - m); i >= 0; ) {
+         char c = cs.charAt(i);
+
+         if (c == first) {
+            int j = 1;
+
+            while ((j < m) && (cs.charAt(i + j) == pattern[j])) {
+               j ++;
+            }
+
+            if (j == m) {
+               return i;
+            }
+         }
+
+         i -= rskip[c & 0xFF];
+      }
+
+      return -1;
+   }
+
+   // -------------------------------------------------------------------------
+   // find all
+   // -------------------------------------------------------------------------
+
+   /**
+    * Pass the index of every match in part of a sequence to an action, in
+    * one pass.
+    *
+    * @param cs          Sequence to search.
+    * @param start       Index at which to start search.
+    * @param end         Index at which to end search; a match must end at or
+    *                    before it.
+    * @param overlapping True if matches may overlap.
+    * @param action      Action to receive each index; may be null to only
+    *                    count matches.
+    *
+    * @return Number of matches.
+    */
+   public int forEach(CharSequence cs, int start, int end,
+         boolean overlapping, IntConsumer action) {
+      if (ignoreCase) {
+         return forEachFolded(cs, start, end, overlapping, action);
+      }
+
+      int  m = pattern.length;
+      char last = pattern[m - 1];
+      int  step = overlapping ? 1 : m;   // Window moves this far on a match.
+      int  n = 0;
+
+      for (int i = Math.max(start, 0) + m - 1; i < end; ) {
+         char c = cs.charAt(i);
+
+         if (c == last) {
+            int j = m - 2;
+            int k = i - 1;
+
+            while ((j >= 0) && (cs.charAt(k) == pattern[j])) {
+               j --;
+               k --;
+            }
+
+            if (j < 0) {
+               if (action != null) {
+                  action.accept(k + 1);
+               }
+
+               n ++;
+               i += step;
+               continue;
+            }
+         }
+
+         i += skip[c & 0xFF];
+      }
+
+      return n;
+   }
+
+   /**
+    * Count the matches in a sequence.
+    *
+    * @param cs          Sequence to search.
+    * @param overlapping True if matches may overlap.
+    *
+    * @return Number of matches.
+    */
+   public int count(CharSequence cs, boolean overlapping) {
+      return forEach(cs, 0, cs.length(), overlapping, null);
+   }
+
+   /**
+    * Find the index of every match in a sequence, in one pass.
+    *
+    * @param cs          Sequence to search.
+    * @param overlapping True if matches may overlap.
+    *
+    * @return Indexes of the matches, in ascending order.
+    */
+   public int[] findAll(CharSequence cs, boolean overlapping) {
+      IntList list = new IntList();
+
+      forEach(cs, 0, cs.length(), overlapping, list);
+
+      return list.toArray();
+   }
+
+   /**
+    * Get a stream of the index of every match in a sequence. Matches are
+    * found as the stream is consumed, so a short-circuiting stream does not
+    * search the whole sequence.
+    *
+    * @param cs          Sequence to search; must not change while the
+    *                    stream is in use.
+    * @param overlapping True if matches may overlap.
+    *
+    * @return Stream of indexes, in ascending order.
+    */
+   public IntStream stream(final CharSequence cs, final boolean overlapping) {
+      PrimitiveIterator.OfInt it = new PrimitiveIterator.OfInt() {
+         private int next = indexOf(cs, 0);
+
+         public boolean hasNext() {
+            return next > -1;
+         }
+
+         public int nextInt() {
+            if (next < 0) {
+               throw new NoSuchElementException();
+            }
+
+            int k = next;
+
+            next = indexOf(cs, k + (overlapping ? 1 : pattern.length));
+
+            return k;
+         }
+      };
+
+      return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(it,
+         Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL),
+         false);
+   }
+
+   // -------------------------------------------------------------------------
+   // ignoring case
+   // -------------------------------------------------------------------------
+
+   // These are the searches above with every text character folded. They are
+   // kept separate so that exact searches pay nothing for case folding.
+
+   private int indexOfFolded(CharSequence cs, int start, int end) {
+      int  m = pattern.length;
+      char last = pattern[m - 1];
+
+      for (int i = Math.max(start, 0) + m - 1; i < end; ) {
+         char c = CaseFold.fold(cs.charAt(i));
+
+         if (c == last) {
+            int j = m - 2;
+            int k = i - 1;
+
+            while ((j >= 0) && (CaseFold.fold(cs.charAt(k)) == pattern[j])) {
+               j --;
+               k --;
+            }
+
+            if (j < 0) {
+               return k + 1;
+            }
+         }
+
+         i += skip[c & 0xFF];
+      }
+
+      return -1;
+   }
+
+   private int lastIndexOfFolded(CharSequence cs, int start) {
+      int  m = pattern.length;
+      char first = pattern[0];
+
+      for (int i = Math.min(start, cs.length() - m); i >= 0; ) {
+         char c = CaseFold.fold(cs.charAt(i));
+
+         if (c == first) {
+            int j = 1;
+
+            while ((j < m) && (CaseFold.fold(cs.charAt(i + j)) == pattern[j])) {
+               j ++;
+            }
+
+            if (j == m) {
+               return i;
+            }
+         }
+
+         i -= rskip[c & 0xFF];
+      }
+
+      return -1;
+   }
+
+   private int forEachFolded(CharSequence cs, int start, int end,
+         boolean overlapping, IntConsumer action) {
+      int  m = pattern.length;
+      char last = pattern[m - 1];
+      int  step = overlapping ? 1 : m;
+      int  n = 0;
+
+      for (int i = Math.max(start, 0) + m - 1; i < end; ) {
+         char c = CaseFold.fold(cs.charAt(i));
+
+         if (c == last) {
+            int j = m - 2;
+            int k = i - 1;
+
+            while ((j >= 0) && (CaseFold.fold(cs.charAt(k)) == pattern[j])) {
+               j --;
+               k --;
+            }
+
+            if (j < 0) {
+               if (action != null) {
+                  action.accept(k + 1);
+               }
+
+               n ++;
+               i += step;
+               continue;
+            }
+         }
+
+         i += skip[c & 0xFF];
+      }
+
+      return n;
+   }
+
+   /**
+    * IntList collects match indexes.
+    */
+   private static final class IntList implements IntConsumer {
+      private int[] arr = new int[16];
+      private int   size;
+
+      public void accept(int value) {
+         if (size == arr.length) {
+            arr = Arrays.copyOf(arr, size * 2);
+         }
+
+         arr[size ++] = value;
+      }
+
+      int[] toArray() {
+         return Arrays.copyOf(arr, size);
+      }
+   }
+
+   public String toString() {
+      return "SearchPlan[" + target + (ignoreCase ? ", ignoreCase]" : "]");
+   }
+}
@@ -0,0 +1,224 @@
+// package org.javacogs;
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import javax.management.*;
+
+/**
+ * SearchPlanCache is a bounded, concurrent cache of compiled search plans,
+ * keyed by target string. Lookups that hit do not lock or allocate.
+ * <br><br>
+ * Eviction is approximately least-recently-used. Each plan carries the
+ * value of a clock that only advances on a miss, so a hit usually reads
+ * one volatile field and writes nothing. When the cache grows past its
+ * maximum size plus a slack of one eighth, one thread removes the plans
+ * with the oldest stamps until the cache is back at its maximum size.
+ * Exact and case-insensitive plans are kept apart, each up to the maximum
+ * size.
+ * <br><br>
+ * The maximum size is read from the system property "strutil.plancache.size"
+ * (default 512; 0 disables caching). Hit, miss, and eviction counts are
+ * always kept, and are published as a platform MBean named
+ * "org.javacogs:type=SearchPlanCache" when "strutil.stats" is "true".
+ *
+ * @see SearchPlan
+ * @see SearchPlanCacheMBean
+ */
+public final class SearchPlanCache implements SearchPlanCacheMBean {
+   /**
+    * Number of plans kept after eviction.
+    */
+   public static final int MAX_SIZE =
+      Math.max(0, Integer.getInteger("strutil.plancache.size", 512));
+
+   private static final int SLACK = MAX_SIZE / 8 + 1;
+
+   private static final ConcurrentHashMap<String, Entry> plans =
+      new ConcurrentHashMap<String, Entry>();
+   private static final ConcurrentHashMap<String, Entry> foldedPlans =
+      new ConcurrentHashMap<String, Entry>();
+
+   private static final AtomicLong    clock = new AtomicLong();
+   private static final ReentrantLock evicting = new ReentrantLock();
+   private static final LongAdder     hits = new LongAdder();
+   private static final LongAdder     misses = new LongAdder();
+   private static final LongAdder     evictions = new LongAdder();
+
+   private static final SearchPlanCache INSTANCE = new SearchPlanCache();
+
+   static {
+      if (StrUtilStats.ENABLED) {
+         try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+               INSTANCE, new ObjectName("org.javacogs:type=SearchPlanCache"));
+         } catch(JMException ex) {
+            // Statistics are still collected; they just can't be browsed.
+         }
+      }
+   }
+
+   /**
+    * Entry is a cached plan and the clock value of its last use.
+    */
+   private static final class Entry {
+      final SearchPlan plan;
+      volatile long    stamp;
+
+      Entry(SearchPlan plan, long stamp) {
+         this.plan = plan;
+         this.stamp = stamp;
+      }
+   }
+
+   /**
+    * Private constructor, so class can only be instantiated for the MBean.
+    */
+   private SearchPlanCache() {
+   }
+
+   /**
+    * Get the plan for a target, compiling and caching it if necessary.
+    *
+    * @param target String to find.
+    *
+    * @return Plan.
+    *
+    * @throws IllegalArgumentException if target is null or empty.
+    */
+   public static SearchPlan get(String target) {
+      return get(target, false);
+   }
+
+   /**
+    * Get the plan for a target, compiling and caching it if necessary.
+    *
+    * @param target     String to find.
+    * @param ignoreCase True to match regardless of case.
+    *
+    * @return Plan.
+    *
+    * @throws IllegalArgumentException if target is null or empty.
+    */
+   public static SearchPlan get(String target, boolean ignoreCase) {
+      ConcurrentHashMap<String, Entry> map = ignoreCase ? foldedPlans : plans;
+      Entry entry = (target == null) ? null : map.get(target);
+
+      if (entry != null) {
+         long now = clock.get();
+
+         // Skip the write when the stamp is current, so that threads sharing
+         // a hot plan don't contend for its cache line.
+         if (entry.stamp != now) {
+            entry.stamp = now;
+         }
+
+         hits.increment();
+
+         return entry.plan;
+      }
+
+      SearchPlan plan = SearchPlan.compile(target, ignoreCase);
+
+      misses.increment();
+
+      if (MAX_SIZE > 0) {
+         Entry prev = map.putIfAbsent(target,
+            new Entry(plan, clock.incrementAndGet()));
+
+         if (prev != null) {
+            return prev.plan;
+         }
+
+         if (map.size() > MAX_SIZE + SLACK) {
+            evict(map);
+         }
+      }
+
+      return plan;
+   }
+
+   /**
+    * Remove the least recently used plans until a map is at the maximum
+    * size. If another thread is already evicting, return at once.
+    *
+    * @param map Map to trim.
+    */
+   private static void evict(ConcurrentHashMap<String, Entry> map) {
+      if (! evicting.tryLock()) {
+         return;
+      }
+
+      try {
+         List<Map.Entry<String, Entry>> list =
+            new ArrayList<Map.Entry<String, Entry>>(map.entrySet());
+
+         list.sort((a, b) -> Long.compare(a.getValue().stamp,
+            b.getValue().stamp));
+
+         for (int i = 0; (i < list.size()) && (map.size() > MAX_SIZE);
+               i ++) {
+            Map.Entry<String, Entry> e = list.get(i);
+
+            if (map.remove(e.getKey(), e.getValue())) {
+               evictions.increment();
+            }
+         }
+      } finally {
+         evicting.unlock();
+      }
+   }
+
+   /**
+    * Get the cache statistics.
+    *
+    * @return Statistics, also published as an MBean.
+    */
+   public static SearchPlanCacheMBean stats() {
+      return INSTANCE;
+   }
+
+   // -------------------------------------------------------------------------
+   // SearchPlanCacheMBean
+   // -------------------------------------------------------------------------
+
+   public long getHitCount() {
+      return hits.sum();
+   }
+
+   public long getMissCount() {
+      return misses.sum();
+   }
+
+   public long getEvictionCount() {
+      return evictions.sum();
+   }
+
+   public double getHitRate() {
+      long h = hits.sum();
+      long total = h + misses.sum();
+
+      return (total == 0) ? 0 : (double) h / total;
+   }
+
+   public int getSize() {
+      return plans.size() + foldedPlans.size();
+   }
+
+   public int getMaxSize() {
+      return MAX_SIZE;
+   }
+
+   public void reset() {
+      hits.reset();
+      misses.reset();
+      evictions.reset();
+   }
+
+   public void clear() {
+      plans.clear();
+      foldedPlans.clear();
+   }
+}
@@ -0,0 +1,61 @@
+// package org.javacogs;
+
+/**
+ * SearchPlanCacheMBean is the management interface through which the search
+ * plan cache statistics are published.
+ *
+ * @see SearchPlanCache
+ */
+public interface SearchPlanCacheMBean {
+   /**
+    * Get the number of lookups that found a compiled plan.
+    *
+    * @return Hit count.
+    */
+   public long getHitCount();
+
+   /**
+    * Get the number of lookups that had to compile a plan.
+    *
+    * @return Miss count.
+    */
+   public long getMissCount();
+
+   /**
+    * Get the number of plans evicted to keep the cache within its size.
+    *
+    * @return Eviction count.
+    */
+   public long getEvictionCount();
+
+   /**
+    * Get the fraction of lookups that found a compiled plan.
+    *
+    * @return Hit rate, 0-1; 0 if there have been no lookups.
+    */
+   public double getHitRate();
+
+   /**
+    * Get the number of plans in the cache.
+    *
+    * @return Current size.
+    */
+   public int getSize();
+
+   /**
+    * Get the number of plans of each kind the cache keeps after eviction.
+    *
+    * @return Maximum size.
+    */
+   public int getMaxSize();
+
+   /**
+    * Reset the counters.
+    */
+   public void reset();
+
+   /**
+    * Remove every plan from the cache.
+    */
+   public void clear();
+}
@@ -0,0 +1,226 @@
+// package org.javacogs;
+
+/**
+ * ShiftDetector guesses whether a text is plain, ROT13, ROT13N5, or some
+ * other Caesar shift from its character histogram. Every letter shift (0-25)
+ * and digit shift (0-9) is tried, and the one whose un-shifted counts best
+ * fit the expected frequencies by chi-squared is chosen.
+ * <br><br>
+ * Letters are scored against English letter frequencies. Digits are scored
+ * against a profile in which low digits are more common, which is typical of
+ * numbers in prose and logs; digit detection is less certain than letter
+ * detection and needs more samples.
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * ShiftDetector.detect(text).getKind() => ShiftDetector.ROT13
+ * </blockquote>
+ *
+ * @see CharHistogram
+ */
+public final class ShiftDetector {
+   /**
+    * The text is not shifted.
+    */
+   public static final int PLAIN = 0;
+
+   /**
+    * Letters are rotated by 13 and digits are not rotated (or there are too
+    * few digits to tell).
+    */
+   public static final int ROT13 = 1;
+
+   /**
+    * Letters are rotated by 13 and digits by 5.
+    */
+   public static final int ROT13N5 = 2;
+
+   /**
+    * Some other shift, or too few letters to tell.
+    */
+   public static final int UNKNOWN = 3;
+
+   private static final String[] KIND_NAMES = {
+      "PLAIN", "ROT13", "ROT13N5", "UNKNOWN"
+   };
+
+   /**
+    * Fewer letters or digits than this are not scored.
+    */
+   private static final int MIN_SAMPLES = 20;
+
+   private static final double[] LETTER_FREQ = {
+      .08167, .01492, .02782, .04253, .12702, .02228, .02015, .06094,
+      .06966, .00153, .00772, .04025, .02406, .06749, .07507, .01929,
+      .00095, .05987, .06327, .09056, .02758, .00978, .02360, .00150,
+      .01974, .00074
+   };
+
+   private static final double[] DIGIT_FREQ = {
+      .147, .170, .126, .091, .083, .087, .074, .069, .072, .081
+   };
+
+   private final int    kind;
+   private final int    letterShift;
+   private final int    digitShift;
+   private final double letterScore;
+   private final double digitScore;
+
+   /**
+    * Private constructor; use detect().
+    */
+   private ShiftDetector(int letterShift, double letterScore, int digitShift,
+         double digitScore) {
+      this.letterShift = letterShift;
+      this.letterScore = letterScore;
+      this.digitShift = digitShift;
+      this.digitScore = digitScore;
+
+      boolean digitsPlain = (digitShift <= 0);
+
+      if ((letterShift == 0) && digitsPlain) {
+         kind = PLAIN;
+      } else if ((letterShift == 13) && digitsPlain) {
+         kind = ROT13;
+      } else if ((letterShift == 13) && (digitShift == 5)) {
+         kind = ROT13N5;
+      } else {
+         kind = UNKNOWN;
+      }
+   }
+
+   /**
+    * Detect the shift of a text.
+    *
+    * @param cs Text to examine.
+    *
+    * @return Detection result.
+    */
+   public static ShiftDetector detect(CharSequence cs) {
+      return detect(CharHistogram.parallelCount(cs));
+   }
+
+   /**
+    * Detect the shift of a text from its histogram.
+    *
+    * @param histogram Histogram from CharHistogram.
+    *
+    * @return Detection result.
+    */
+   public static ShiftDetector detect(long[] histogram) {
+      long[]   letters = CharHistogram.letters(histogram);
+      long[]   digits = CharHistogram.digits(histogram);
+      double[] letterBest = best(letters, LETTER_FREQ);
+      double[] digitBest = best(digits, DIGIT_FREQ);
+
+      return new ShiftDetector((int) letterBest[0], letterBest[1],
+         (int) digitBest[0], digitBest[1]);
+   }
+
+   /**
+    * Find the shift whose un-shifted counts best fit the expected
+    * frequencies.
+    *
+    * @param counts   Observed counts.
+    * @param expected Expected frequencies.
+    *
+    * @return Best shift and its chi-squared score; shift -1 and score NaN if
+    *         there are too few samples.
+    */
+   private static double[] best(long[] counts, double[] expected) {
+      int  n = counts.length;
+      long total = 0;
+
+      for (int i = 0; i < n; i ++) {
+         total += counts[i];
+      }
+
+      if (total < MIN_SAMPLES) {
+         return new double[] { -1, Double.NaN };
+      }
+
+      int    bestShift = 0;
+      double bestScore = Double.MAX_VALUE;
+
+      for (int shift = 0; shift < n; shift ++) {
+         double score = 0;
+
+         for (int i = 0; i < n; i ++) {
+            double e = total * expected[i];
+            double d = counts[(i + shift) % n] - e;
+
+            score += (d * d) / e;
+         }
+
+         if (score < bestScore) {
+            bestScore = score;
+            bestShift = shift;
+         }
+      }
+
+      return new double[] { bestShift, bestScore };
+   }
+
+   // -------------------------------------------------------------------------
+   // accessors
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get the kind of encoding detected.
+    *
+    * @return PLAIN, ROT13, ROT13N5, or UNKNOWN.
+    */
+   public int getKind() {
+      return kind;
+   }
+
+   /**
+    * Get the name of the kind of encoding detected.
+    *
+    * @return "PLAIN", "ROT13", "ROT13N5", or "UNKNOWN".
+    */
+   public String getKindName() {
+      return KIND_NAMES[kind];
+   }
+
+   /**
+    * Get the detected letter shift.
+    *
+    * @return Shift 0-25; -1 if there were too few letters.
+    */
+   public int getLetterShift() {
+      return letterShift;
+   }
+
+   /**
+    * Get the detected digit shift.
+    *
+    * @return Shift 0-9; -1 if there were too few digits.
+    */
+   public int getDigitShift() {
+      return digitShift;
+   }
+
+   /**
+    * Get the chi-squared score of the letter shift. Lower is a better fit.
+    *
+    * @return Score; NaN if there were too few letters.
+    */
+   public double getLetterScore() {
+      return letterScore;
+   }
+
+   /**
+    * Get the chi-squared score of the digit shift. Lower is a better fit.
+    *
+    * @return Score; NaN if there were too few digits.
+    */
+   public double getDigitScore() {
+      return digitScore;
+   }
+
+   public String toString() {
+      return getKindName() + " (letters +" + letterShift + ", digits +" +
+         digitShift + ")";
+   }
+}
@@ -1,6 +1,9 @@
 // package org.javacogs;
 
+import java.nio.*;
 import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
 
 /**
  * StrUtil provides utility methods for manipulating strings and string
@@ -44,19 +47,19 @@ public final class StrUtil {
 
    /**
     * Gets the integer value of the given string. If the string cannot be
-    * converted to an integer value, the default value is returned.
+    * converted to an integer value, the default value is returned. No
+    * exception is thrown, so bad input costs no more than good.
     *
     * @param str String from which to get integer value.
     * @param def Default integer value.
     *
     * @return Integer value of given string.
+    *
+    * @see NumberParser
     */
    public static int intValue(String str, int def) {
-      try {
-         return Integer.parseInt(str);
-      } catch(NumberFormatException ex) {
-         return def;
-      }
+      return (str == null) ? def : NumberParser.toInt(str, 0, str.length(),
+         def);
    }
 
    // -------------------------------------------------------------------------
@@ -72,7 +75,7 @@ public final class StrUtil {
     * @return Index of given string. -1 if str or target is null.
     */
    public static int indexOf(String str, String target) {
-      return ((str == null) || (target == null)) ? -1 : str.indexOf(target);
+      return indexOf(str, target, 0);
    }
 
    /**
@@ -86,8 +89,18 @@ public final class StrUtil {
     * @return Index of given string. -1 if str or target is null.
     */
    public static int indexOf(String str, String target, int start) {
-      return ((str == null) || (target == null)) ? -1 : 
-         str.indexOf(target, start);
+      if ((str == null) || (target == null)) {
+         return -1;
+      }
+
+      long t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      int  index = str.indexOf(target, start);
+
+      if (StrUtilStats.ENABLED) {
+         StrUtilStats.record(StrUtilStats.INDEXOF, t0, str.length());
+      }
+
+      return index;
    }
 
    /**
@@ -99,7 +112,7 @@ public final class StrUtil {
     * @return Index of given string. -1 if str is null.
     */
    public static int indexOf(String str, char target) {
-      return (str == null) ? -1 : str.indexOf(target);
+      return indexOf(str, target, 0);
    }
 
    /**
@@ -113,7 +126,18 @@ public final class StrUtil {
     * @return Index of given string. -1 if str or target is null.
     */
    public static int indexOf(String str, char target, int start) {
-      return (str == null) ? -1 : str.indexOf(target, start);
+      if (str == null) {
+         return -1;
+      }
+
+      long t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      int  index = str.indexOf(target, start);
+
+      if (StrUtilStats.ENABLED) {
+         StrUtilStats.record(StrUtilStats.INDEXOF, t0, str.length());
+      }
+
+      return index;
    }
 
    /**
@@ -139,24 +163,33 @@ public final class StrUtil {
     * @return Index of given string. -1 if sb or target is null.
     */
    public static int indexOf(StringBuffer sb, String target, int start) {
-      int index = -1;
+      long t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      int  index = find(sb, target, start);
 
-      if ((sb != null) && (target != null) && (target.length() > 0)) {
-         for (int i = start; i < sb.length(); i ++) {
-            int j = i + target.length();
+      if (StrUtilStats.ENABLED && (sb != null)) {
+         StrUtilStats.record(StrUtilStats.INDEXOF, t0, sb.length());
+      }
 
-            if (j > sb.length()) {
-               break;
-            }
+      return index;
+   }
 
-            if (sb.substring(i, j).equals(target)) {
-               index = i;
-               break;
-            }
-         }
+   /**
+    * Find the index of a string in the given buffer starting from the given
+    * position. This is the uninstrumented search used by indexOf() and by
+    * the other methods that search buffers.
+    *
+    * @param sb     Buffer to search.
+    * @param target String to find.
+    * @param start  Index at which to start search.
+    *
+    * @return Index of given string. -1 if sb or target is null.
+    */
+   private static int find(StringBuffer sb, String target, int start) {
+      if ((sb == null) || (target == null) || (target.length() == 0)) {
+         return -1;
       }
 
-      return index;
+      return find((CharSequence) sb, target, start);
    }
 
    /**
@@ -182,7 +215,8 @@ public final class StrUtil {
     * @return Index of given character. -1 if sb is null.
     */
    public static int indexOf(StringBuffer sb, char target, int start) {
-      int index = -1;
+      long t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      int  index = -1;
 
       if (sb != null) {
          for (int i = start; i < sb.length(); i ++) {
@@ -191,11 +225,211 @@ public final class StrUtil {
                break;
             }
          }
+
+         if (StrUtilStats.ENABLED) {
+            StrUtilStats.record(StrUtilStats.INDEXOF, t0, sb.length());
+         }
       }
 
       return index;
    }
 
+   /**
+    * Find the index of a character between the position and limit of a
+    * buffer.
+    *
+    * @param buf    Buffer to search.
+    * @param target Character to find.
+    *
+    * @return Index of given character, relative to the buffer's position. -1
+    *         if buf is null.
+    */
+   public static int indexOf(CharBuffer buf, char target) {
+      if (buf != null) {
+         int pos = buf.position();
+
+         for (int i = pos; i < buf.limit(); i ++) {
+            if (buf.get(i) == target) {
+               return i - pos;
+            }
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * Find the index of a string between the position and limit of a buffer.
+    *
+    * @param buf    Buffer to search.
+    * @param target String to find.
+    *
+    * @return Index of given string, relative to the buffer's position. -1 if
+    *         buf or target is null.
+    */
+   public static int indexOf(CharBuffer buf, String target) {
+      return (buf == null) ? -1 : find(buf, target, 0);
+   }
+
+   /**
+    * Find the index of a byte between the position and limit of a buffer.
+    *
+    * @param buf    Buffer to search.
+    * @param target Byte to find.
+    *
+    * @return Index of given byte, relative to the buffer's position. -1 if
+    *         buf is null.
+    */
+   public static int indexOf(ByteBuffer buf, byte target) {
+      if (buf != null) {
+         int pos = buf.position();
+
+         for (int i = pos; i < buf.limit(); i ++) {
+            if (buf.get(i) == target) {
+               return i - pos;
+            }
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * Find the index of a byte sequence between the position and limit of a
+    * buffer.
+    *
+    * @param buf    Buffer to search.
+    * @param target Bytes to find.
+    *
+    * @return Index of given bytes, relative to the buffer's position. -1 if
+    *         buf or target is null.
+    */
+   public static int indexOf(ByteBuffer buf, byte[] target) {
+      return (buf == null) ? -1 : find(buf, target, 0);
+   }
+
+   /**
+    * Find the index of a string in a character sequence.
+    *
+    * @param cs     Sequence to search.
+    * @param target String to find.
+    * @param start  Index at which to start search.
+    *
+    * @return Index of given string. -1 if target is null or empty.
+    */
+   private static int find(CharSequence cs, String target, int start) {
+      if ((target == null) || (target.length() == 0)) {
+         return -1;
+      }
+
+      if (plain(cs.length() - Math.max(start, 0), target)) {
+         return scan(cs, target, start);
+      }
+
+      return SearchPlanCache.get(target).indexOf(cs, start);
+   }
+
+   /**
+    * Test whether a search should scan rather than use a compiled plan:
+    * true for single characters and for text shorter than
+    * Dispatch.searchThreshold().
+    *
+    * @param length Number of characters to search.
+    * @param target String to find; not empty.
+    *
+    * @return True to scan.
+    */
+   private static boolean plain(int length, String target) {
+      return (target.length() == 1) || (length < Dispatch.searchThreshold());
+   }
+
+   /**
+    * Find the index of a string in a character sequence by comparing it at
+    * every position.
+    *
+    * @param cs     Sequence to search.
+    * @param target String to find; not empty.
+    * @param start  Index at which to start search.
+    *
+    * @return Index of given string. -1 if it is not found.
+    */
+   static int scan(CharSequence cs, String target, int start) {
+      char first = target.charAt(0);
+      int  tl = target.length();
+      int  last = cs.length() - tl;
+
+      for (int i = Math.max(start, 0); i <= last; i ++) {
+         if (cs.charAt(i) == first) {
+            int j = 1;
+
+            while ((j < tl) && (cs.charAt(i + j) == target.charAt(j))) {
+               j ++;
+            }
+
+            if (j == tl) {
+               return i;
+            }
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * Count the occurrences of a string in a character sequence, including
+    * overlapping ones, by scanning.
+    *
+    * @param cs     Sequence in which to count occurrences.
+    * @param target String to count; not empty.
+    *
+    * @return Number of occurrences.
+    */
+   private static int scanCount(CharSequence cs, String target) {
+      int count = 0;
+      int i = scan(cs, target, 0);
+
+      while (i > -1) {
+         count ++;
+         i = scan(cs, target, i + 1);
+      }
+
+      return count;
+   }
+
+   /**
+    * Find the index of a byte sequence between the position and limit of a
+    * buffer.
+    *
+    * @param buf    Buffer to search.
+    * @param target Bytes to find.
+    * @param start  Index, relative to the position, at which to start.
+    *
+    * @return Index of given bytes, relative to the buffer's position. -1 if
+    *         target is null or empty.
+    */
+   private static int find(ByteBuffer buf, byte[] target, int start) {
+      if ((target == null) || (target.length == 0)) {
+         return -1;
+      }
+
+      int pos = buf.position();
+      int last = buf.limit() - target.length;
+
+      for (int i = pos + start; i <= last; i ++) {
+         int j = 0;
+
+         while ((j < target.length) && (buf.get(i + j) == target[j])) {
+            j ++;
+         }
+
+         if (j == target.length) {
+            return i - pos;
+         }
+      }
+
+      return -1;
+   }
+
    // -------------------------------------------------------------------------
    // lastIndexOf
    // -------------------------------------------------------------------------
@@ -267,8 +501,8 @@ public final class StrUtil {
    }
 
    /**
-    * Find the last index of a string in the given buffer starting from the
-    * given position.
+    * Find the last index of a string in the given buffer, searching
+    * backward from the given position, as String.lastIndexOf() does.
     *
     * @param sb     Buffer to search.
     * @param target String to find.
@@ -277,24 +511,11 @@ public final class StrUtil {
     * @return Index of given string. -1 if sb or target is null.
     */
    public static int lastIndexOf(StringBuffer sb, String target, int start) {
-      int index = -1;
-
-      if ((sb != null) && (target != null) && (target.length() > 0)) {
-         for (int i = sb.length() - 1; i >= start; i --) {
-            int j = i + target.length();
-
-            if (j > sb.length()) {
-               break;
-            }
-
-            if (sb.substring(i, j).equals(target)) {
-               index = i;
-               break;
-            }
-         }
+      if ((sb == null) || (target == null) || (target.length() == 0)) {
+         return -1;
       }
 
-      return index;
+      return SearchPlanCache.get(target).lastIndexOf(sb, start);
    }
 
    /**
@@ -310,8 +531,8 @@ public final class StrUtil {
    }
 
    /**
-    * Find the last index of a character in the given buffer starting from the
-    * given position.
+    * Find the last index of a character in the given buffer, searching
+    * backward from the given position, as String.lastIndexOf() does.
     *
     * @param sb     Buffer to search.
     * @param target Character to find.
@@ -323,7 +544,7 @@ public final class StrUtil {
       int index = -1;
 
       if (sb != null) {
-         for (int i = sb.length() - 1; i >= start; i --) {
+         for (int i = Math.min(start, sb.length() - 1); i >= 0; i --) {
             if (sb.charAt(i) == target) {
                index = i;
                break;
@@ -335,159 +556,677 @@ public final class StrUtil {
    }
 
    // -------------------------------------------------------------------------
-   // count
+   // indexesOf
    // -------------------------------------------------------------------------
 
    /**
-    * Count the occurrences of a character in a string.
-    *
-    * @param str    String in which to count occurrences.
-    * @param target Character to count.
-    *
-    * @return Number of occurrences.
-    */
-   public static int count(String str, char target) {
-      return count(str, String.valueOf(target));
-   }
-
-   /**
-    * Count the occurrences of one string in another string.
+    * Find the index of every occurrence of a string, in one pass.
+    * <br><br>
+    * Example:
+    * <blockquote>
+    * indexesOf("aaa", "aa", true) => { 0, 1 }<br>
+    * indexesOf("aaa", "aa", false) => { 0 }
+    * </blockquote>
     *
-    * @param str    String in which to count occurrences.
-    * @param target String to count.
+    * @param cs          Sequence to search.
+    * @param target      String to find.
+    * @param overlapping True if occurrences may overlap.
     *
-    * @return Number of occurrences.
+    * @return Indexes in ascending order. Empty array if cs or target is null
+    *         or empty.
     */
-   public static int count(String str, String target) {
-      // Note: It seemed better to do the counting here than to convert the
-      // string to a string buffer, which would cause two passes through the
-      // string.
-      
-      int count = 0;
-
-      if (str != null) {
-         int i = str.indexOf(target);
-
-         while (i > -1) {
-            count ++;
-            i = str.indexOf(target, i + 1);
-         }
+   public static int[] indexesOf(CharSequence cs, String target,
+         boolean overlapping) {
+      if ((cs == null) || (target == null) || (target.length() == 0)) {
+         return new int[0];
       }
 
-      return count;
+      return SearchPlanCache.get(target).findAll(cs, overlapping);
    }
 
    /**
-    * Count the occurrences of a character in a string buffer.
+    * Get a stream of the index of every occurrence of a string. Occurrences
+    * are found as the stream is consumed.
     *
-    * @param sb     Buffer in which to count occurrences.
-    * @param target Character to count.
+    * @param cs          Sequence to search; must not change while the
+    *                    stream is in use.
+    * @param target      String to find.
+    * @param overlapping True if occurrences may overlap.
     *
-    * @return Number of occurrences.
+    * @return Stream of indexes in ascending order. Empty stream if cs or
+    *         target is null or empty.
     */
-   public static int count(StringBuffer sb, char target) {
-      return count(sb, String.valueOf(target));
+   public static IntStream indexStream(CharSequence cs, String target,
+         boolean overlapping) {
+      if ((cs == null) || (target == null) || (target.length() == 0)) {
+         return IntStream.empty();
+      }
+
+      return SearchPlanCache.get(target).stream(cs, overlapping);
    }
 
    /**
-    * Count the occurrences of a string in a string buffer.
+    * Pass the index of every occurrence of a string to an action, in one
+    * pass and without boxing.
     *
-    * @param sb     Buffer in which to count occurrences.
-    * @param target String to count.
+    * @param cs          Sequence to search.
+    * @param target      String to find.
+    * @param overlapping True if occurrences may overlap.
+    * @param action      Action to receive each index, in ascending order.
     *
     * @return Number of occurrences.
     */
-   public static int count(StringBuffer sb, String target) {
-      int count = 0;
-      int i = indexOf(sb, target);
-
-      while (i > -1) {
-         count ++;
-         i = indexOf(sb, target, i + 1);
+   public static int forEachIndex(CharSequence cs, String target,
+         boolean overlapping, IntConsumer action) {
+      if ((cs == null) || (target == null) || (target.length() == 0)) {
+         return 0;
       }
 
-      return count;
+      return SearchPlanCache.get(target).forEach(cs, 0, cs.length(),
+         overlapping, action);
    }
 
    // -------------------------------------------------------------------------
-   // trim
+   // ignoring case
    // -------------------------------------------------------------------------
 
-   // trim:
    /**
-    * Trim whitespace from the beginning and end of a string.
+    * Find the index of a string in a character sequence, ignoring case. Case
+    * is folded by CaseFold as characters are compared, so cs is not copied.
     *
-    * @param str String to trim
+    * @param cs     Sequence to search.
+    * @param target String to find.
     *
-    * @return Trimmmed string; empty string if given string is null.
+    * @return Index of given string. -1 if cs or target is null.
     */
-   public static String trim(String str) {
-      return (str == null) ? "" : str.trim();
+   public static int indexOfIgnoreCase(CharSequence cs, String target) {
+      return indexOfIgnoreCase(cs, target, 0);
    }
 
-   // trim:
    /**
-    * Trim whitespace from the beginning and end of a string buffer.
+    * Find the index of a string in a character sequence starting from the
+    * given position, ignoring case.
     *
-    * @param sb String buffer to trim.
+    * @param cs     Sequence to search.
+    * @param target String to find.
+    * @param start  Index at which to start search.
     *
-    * @return Reference to modified buffer.
+    * @return Index of given string. -1 if cs or target is null.
     */
-   public static StringBuffer trim(StringBuffer sb) {
-      if (sb != null) {
-         int i = 0;
-
-         while (i < sb.length()) {
-            if (Character.isWhitespace(sb.charAt(i))) {
-               sb.deleteCharAt(i);
-            } else {
-               i ++;
-            }
-         }
+   public static int indexOfIgnoreCase(CharSequence cs, String target,
+         int start) {
+      if ((cs == null) || (target == null) || (target.length() == 0)) {
+         return -1;
       }
 
-      return sb;
+      return SearchPlanCache.get(target, true).indexOf(cs, start);
    }
 
-   // -------------------------------------------------------------------------
-   // left
-   // -------------------------------------------------------------------------
-
    /**
-    * Get the left part of a string.
+    * Find the last index of a string in a character sequence, ignoring case.
     *
-    * @param str       String from which to get part.
-    * @param forLength Length of part to get.
+    * @param cs     Sequence to search.
+    * @param target String to find.
     *
-    * @return Left part of string. Empty string if given string is null.
+    * @return Index of given string. -1 if cs or target is null.
     */
-   public static String left(String str, int forLength) {
-      return (str == null) ? "" : str.substring(0, forLength);
+   public static int lastIndexOfIgnoreCase(CharSequence cs, String target) {
+      return (cs == null) ? -1 :
+         lastIndexOfIgnoreCase(cs, target, cs.length() - 1);
    }
 
    /**
-    * Get the left part of a string buffer.
+    * Find the last index of a string in a character sequence, searching
+    * backward from the given position, ignoring case.
     *
-    * @param sb        Buffer from which to get left part.
-    * @param forLength Length of part to get.
+    * @param cs     Sequence to search.
+    * @param target String to find.
+    * @param start  Index at which to start search.
     *
-    * @return Left part of buffer. Empty string if given buffer is null.
+    * @return Index of given string. -1 if cs or target is null.
     */
-   public static String left(StringBuffer sb, int forLength) {
-      return (sb == null) ? "" : sb.substring(0, forLength);
-   }
+   public static int lastIndexOfIgnoreCase(CharSequence cs, String target,
+         int start) {
+      if ((cs == null) || (target == null) || (target.length() == 0)) {
+         return -1;
+      }
 
-   // -------------------------------------------------------------------------
-   // right
-   // -------------------------------------------------------------------------
+      return SearchPlanCache.get(target, true).lastIndexOf(cs, start);
+   }
 
    /**
-    * Get the right part of a string.
+    * Count the occurrences of a string in a character sequence, ignoring
+    * case. As with count(), occurrences may overlap.
     *
-    * @param str       String from which to get part.
-    * @param forLength Length of part to get.
+    * @param cs     Sequence in which to count occurrences.
+    * @param target String to count.
     *
-    * @return Right part of string. Empty string if given string is null.
+    * @return Number of occurrences.
+    */
+   public static int countIgnoreCase(CharSequence cs, String target) {
+      if ((cs == null) || (target == null) || (target.length() == 0)) {
+         return 0;
+      }
+
+      return SearchPlanCache.get(target, true).count(cs, true);
+   }
+
+   /**
+    * Replace every occurrence of one string with another, ignoring case.
+    *
+    * @param str         String in which to do replacing.
+    * @param target      String to replace.
+    * @param replacement String with which to replace target.
+    *
+    * @return String where target is replaced with replacement.
+    */
+   public static String replaceIgnoreCase(String str, String target,
+         String replacement) {
+      if (str == null) {
+         return "";
+      }
+
+      StringBuilder out = replacedIgnoreCase(str, target, replacement);
+
+      return (out == null) ? str : out.toString();
+   }
+
+   /**
+    * Replace every occurrence of one string with another within the given
+    * buffer, ignoring case.
+    *
+    * @param sb          Buffer in which to do replacing.
+    * @param target      String to replace.
+    * @param replacement String with which to replace target.
+    *
+    * @return Reference to modified buffer.
+    */
+   public static StringBuffer replaceIgnoreCase(StringBuffer sb, String target,
+         String replacement) {
+      StringBuilder out = replacedIgnoreCase(sb, target, replacement);
+
+      if (out != null) {
+         sb.setLength(0);
+         sb.append(out);
+      }
+
+      return sb;
+   }
+
+   /**
+    * Build the result of replacing every occurrence of one string with
+    * another, ignoring case. Occurrences are found left to right without
+    * overlapping, in one pass, and the text between them is copied once.
+    *
+    * @param cs          Text in which to do replacing.
+    * @param target      String to replace.
+    * @param replacement String with which to replace target.
+    *
+    * @return Builder holding the result; null if nothing was replaced.
+    */
+   private static StringBuilder replacedIgnoreCase(CharSequence cs,
+         String target, String replacement) {
+      if ((target == null) || (target.length() == 0)) {
+         return null;
+      }
+
+      int[] at = SearchPlanCache.get(target, true).findAll(cs, false);
+
+      if (at.length == 0) {
+         return null;
+      }
+
+      int           tl = target.length();
+      int           s = 0;
+      StringBuilder out = new StringBuilder(cs.length() +
+         at.length * Math.max(0, replacement.length() - tl));
+
+      for (int i = 0; i < at.length; i ++) {
+         out.append(cs, s, at[i]).append(replacement);
+         s = at[i] + tl;
+      }
+
+      return out.append(cs, s, cs.length());
+   }
+
+   /**
+    * Split a string into an array of strings, matching the delimiter
+    * regardless of case. The text after the last delimiter is always
+    * included, even if it is empty, as with split().
+    *
+    * @param str       String to split.
+    * @param delimiter Delimiter on which to split the string.
+    *
+    * @return Array of strings.
+    */
+   public static String[] splitIgnoreCase(String str, String delimiter) {
+      if ((str == null) || (delimiter == null) || (delimiter.length() == 0)) {
+         return new String[0];
+      }
+
+      int[]    at = SearchPlanCache.get(delimiter, true).findAll(str, false);
+      String[] arr = new String[at.length + 1];
+      int      s = 0;
+
+      for (int i = 0; i < at.length; i ++) {
+         arr[i] = str.substring(s, at[i]);
+         s = at[i] + delimiter.length();
+      }
+
+      arr[at.length] = str.substring(s);
+
+      return arr;
+   }
+
+   // -------------------------------------------------------------------------
+   // count
+   // -------------------------------------------------------------------------
+
+   /**
+    * Count the occurrences of a character in a string.
+    *
+    * @param str    String in which to count occurrences.
+    * @param target Character to count.
+    *
+    * @return Number of occurrences.
+    */
+   public static int count(String str, char target) {
+      int count = 0;
+
+      if (str != null) {
+         for (int i = 0; i < str.length(); i ++) {
+            if (str.charAt(i) == target) {
+               count ++;
+            }
+         }
+      }
+
+      return count;
+   }
+
+   /**
+    * Count the occurrences of one string in another string.
+    *
+    * @param str    String in which to count occurrences.
+    * @param target String to count.
+    *
+    * @return Number of occurrences.
+    */
+   public static int count(String str, String target) {
+      // Note: It seemed better to do the counting here than to convert the
+      // string to a string buffer, which would cause two passes through the
+      // string.
+      
+      int count = 0;
+
+      if (str != null) {
+         int i = str.indexOf(target);
+
+         while (i > -1) {
+            count ++;
+            i = str.indexOf(target, i + 1);
+         }
+      }
+
+      return count;
+   }
+
+   /**
+    * Count the occurrences of a character in a string buffer.
+    *
+    * @param sb     Buffer in which to count occurrences.
+    * @param target Character to count.
+    *
+    * @return Number of occurrences.
+    */
+   public static int count(StringBuffer sb, char target) {
+      int count = 0;
+
+      if (sb != null) {
+         for (int i = 0; i < sb.length(); i ++) {
+            if (sb.charAt(i) == target) {
+               count ++;
+            }
+         }
+      }
+
+      return count;
+   }
+
+   /**
+    * Count the occurrences of a string in a string buffer.
+    *
+    * @param sb     Buffer in which to count occurrences.
+    * @param target String to count.
+    *
+    * @return Number of occurrences.
+    */
+   public static int count(StringBuffer sb, String target) {
+      if ((sb == null) || (target == null) || (target.length() == 0)) {
+         return 0;
+      }
+
+      if (plain(sb.length(), target)) {
+         return scanCount(sb, target);
+      }
+
+      return SearchPlanCache.get(target).count(sb, true);
+   }
+
+   /**
+    * Count the occurrences of a character between the position and limit of
+    * a buffer.
+    *
+    * @param buf    Buffer in which to count occurrences.
+    * @param target Character to count.
+    *
+    * @return Number of occurrences.
+    */
+   public static int count(CharBuffer buf, char target) {
+      int count = 0;
+
+      if (buf != null) {
+         for (int i = buf.position(); i < buf.limit(); i ++) {
+            if (buf.get(i) == target) {
+               count ++;
+            }
+         }
+      }
+
+      return count;
+   }
+
+   /**
+    * Count the occurrences of a string between the position and limit of a
+    * buffer.
+    *
+    * @param buf    Buffer in which to count occurrences.
+    * @param target String to count.
+    *
+    * @return Number of occurrences.
+    */
+   public static int count(CharBuffer buf, String target) {
+      if ((buf == null) || (target == null) || (target.length() == 0)) {
+         return 0;
+      }
+
+      if (plain(buf.length(), target)) {
+         return scanCount(buf, target);
+      }
+
+      return SearchPlanCache.get(target).count(buf, true);
+   }
+
+   /**
+    * Count the occurrences of a byte between the position and limit of a
+    * buffer.
+    *
+    * @param buf    Buffer in which to count occurrences.
+    * @param target Byte to count.
+    *
+    * @return Number of occurrences.
+    */
+   public static int count(ByteBuffer buf, byte target) {
+      int count = 0;
+
+      if (buf != null) {
+         for (int i = buf.position(); i < buf.limit(); i ++) {
+            if (buf.get(i) == target) {
+               count ++;
+            }
+         }
+      }
+
+      return count;
+   }
+
+   /**
+    * Count the occurrences of a byte sequence between the position and limit
+    * of a buffer.
+    *
+    * @param buf    Buffer in which to count occurrences.
+    * @param target Bytes to count.
+    *
+    * @return Number of occurrences.
+    */
+   public static int count(ByteBuffer buf, byte[] target) {
+      int count = 0;
+
+      if (buf != null) {
+         int i = find(buf, target, 0);
+
+         while (i > -1) {
+            count ++;
+            i = find(buf, target, i + 1);
+         }
+      }
+
+      return count;
+   }
+
+   // -------------------------------------------------------------------------
+   // trim
+   // -------------------------------------------------------------------------
+
+   // trim:
+   /**
+    * Trim whitespace from the beginning and end of a string.
+    *
+    * @param str String to trim
+    *
+    * @return Trimmmed string; empty string if given string is null.
+    */
+   public static String trim(String str) {
+      return (str == null) ? "" : str.trim();
+   }
+
+   // trim:
+   /**
+    * Trim whitespace from the beginning and end of a string buffer.
+    *
+    * @param sb String buffer to trim.
+    *
+    * @return Reference to modified buffer.
+    */
+   public static StringBuffer trim(StringBuffer sb) {
+      if (sb != null) {
+         int i = 0;
+
+         while (i < sb.length()) {
+            if (Character.isWhitespace(sb.charAt(i))) {
+               sb.deleteCharAt(i);
+            } else {
+               i ++;
+            }
+         }
+      }
+
+      return sb;
+   }
+
+   /**
+    * Remove whitespace from part of a character array, in the same way as
+    * trim(StringBuffer). The remaining characters are moved up to off.
+    *
+    * @param arr Array to trim.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    *
+    * @return Number of characters remaining.
+    */
+   public static int trim(char[] arr, int off, int len) {
+      return keep(arr, off, len, KEEP_NON_WHITESPACE);
+   }
+
+   // -------------------------------------------------------------------------
+   // character class filters
+   // -------------------------------------------------------------------------
+
+   private static final int KEEP_NON_WHITESPACE = 0;
+   private static final int KEEP_LETTERS        = 1;
+   private static final int KEEP_DIGITS         = 2;
+   private static final int KEEP_LETTERS_DIGITS = 3;
+
+   /**
+    * Remove everything but letters from part of a character array. The
+    * remaining characters are moved up to off.
+    *
+    * @param arr Array to filter.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    *
+    * @return Number of characters remaining.
+    */
+   public static int keepLetters(char[] arr, int off, int len) {
+      return keep(arr, off, len, KEEP_LETTERS);
+   }
+
+   /**
+    * Remove everything but digits from part of a character array. The
+    * remaining characters are moved up to off.
+    *
+    * @param arr Array to filter.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    *
+    * @return Number of characters remaining.
+    */
+   public static int keepDigits(char[] arr, int off, int len) {
+      return keep(arr, off, len, KEEP_DIGITS);
+   }
+
+   /**
+    * Remove everything but letters and digits from part of a character
+    * array. The remaining characters are moved up to off.
+    *
+    * @param arr Array to filter.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    *
+    * @return Number of characters remaining.
+    */
+   public static int keepLettersOrDigits(char[] arr, int off, int len) {
+      return keep(arr, off, len, KEEP_LETTERS_DIGITS);
+   }
+
+   /**
+    * Remove the characters not in the given class from part of a character
+    * array.
+    *
+    * @param arr  Array to filter.
+    * @param off  Index of first character.
+    * @param len  Number of characters.
+    * @param kind One of the KEEP_ constants.
+    *
+    * @return Number of characters remaining.
+    */
+   private static int keep(char[] arr, int off, int len, int kind) {
+      int end = off + len;
+      int j = off;
+
+      for (int i = off; i < end; i ++) {
+         char    c = arr[i];
+         boolean keep;
+
+         switch (kind) {
+            case KEEP_LETTERS:
+               keep = Character.isLetter(c);
+               break;
+
+            case KEEP_DIGITS:
+               keep = Character.isDigit(c);
+               break;
+
+            case KEEP_LETTERS_DIGITS:
+               keep = Character.isLetterOrDigit(c);
+               break;
+
+            default:
+               keep = ! Character.isWhitespace(c);
+               break;
+         }
+
+         if (keep) {
+            arr[j ++] = c;
+         }
+      }
+
+      return j - off;
+   }
+
+   // -------------------------------------------------------------------------
+   // case
+   // -------------------------------------------------------------------------
+
+   /**
+    * Convert part of a character array to upper case in place.
+    *
+    * @param arr Array to convert.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    */
+   public static void toUpperCase(char[] arr, int off, int len) {
+      int end = off + len;
+
+      for (int i = off; i < end; i ++) {
+         arr[i] = Character.toUpperCase(arr[i]);
+      }
+   }
+
+   /**
+    * Convert part of a character array to lower case in place.
+    *
+    * @param arr Array to convert.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    */
+   public static void toLowerCase(char[] arr, int off, int len) {
+      int end = off + len;
+
+      for (int i = off; i < end; i ++) {
+         arr[i] = Character.toLowerCase(arr[i]);
+      }
+   }
+
+   // -------------------------------------------------------------------------
+   // left
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get the left part of a string.
+    *
+    * @param str       String from which to get part.
+    * @param forLength Length of part to get.
+    *
+    * @return Left part of string. Empty string if given string is null.
+    */
+   public static String left(String str, int forLength) {
+      return (str == null) ? "" : str.substring(0, forLength);
+   }
+
+   /**
+    * Get the left part of a string buffer.
+    *
+    * @param sb        Buffer from which to get left part.
+    * @param forLength Length of part to get.
+    *
+    * @return Left part of buffer. Empty string if given buffer is null.
+    */
+   public static String left(StringBuffer sb, int forLength) {
+      return (sb == null) ? "" : sb.substring(0, forLength);
+   }
+
+   // -------------------------------------------------------------------------
+   // right
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get the right part of a string.
+    *
+    * @param str       String from which to get part.
+    * @param forLength Length of part to get.
+    *
+    * @return Right part of string. Empty string if given string is null.
     */
    public static String right(String str, int forLength) {
       return (str == null) ? "" : str.substring(str.length() - forLength);
@@ -636,6 +1375,34 @@ public final class StrUtil {
       return sb;
    }
 
+   /**
+    * Pad part of a character array on the left to the given size with the
+    * given character, writing the result to another array. If the source is
+    * longer than the specified size, it is truncated. The arrays must not
+    * overlap.
+    *
+    * @param src      Characters to pad.
+    * @param srcOff   Index of first source character.
+    * @param len      Number of source characters.
+    * @param dst      Array to receive exactly toSize characters.
+    * @param dstOff   Index in dst at which to start.
+    * @param toSize   Desired length.
+    * @param withChar Character to use for padding.
+    *
+    * @return Index in dst after the last character written.
+    */
+   public static int padLeft(char[] src, int srcOff, int len, char[] dst,
+         int dstOff, int toSize, char withChar) {
+      // If the source is longer than the given size, truncate it.
+      int n = Math.min(len, toSize);
+      int padLength = toSize - n;
+
+      Arrays.fill(dst, dstOff, dstOff + padLength, withChar);
+      System.arraycopy(src, srcOff, dst, dstOff + padLength, n);
+
+      return dstOff + toSize;
+   }
+
    // -------------------------------------------------------------------------
    // padRight
    // -------------------------------------------------------------------------
@@ -712,6 +1479,33 @@ public final class StrUtil {
       return sb;
    }
 
+   /**
+    * Pad part of a character array on the right to the given size with the
+    * given character, writing the result to another array. If the source is
+    * longer than the specified size, it is truncated. The arrays must not
+    * overlap.
+    *
+    * @param src      Characters to pad.
+    * @param srcOff   Index of first source character.
+    * @param len      Number of source characters.
+    * @param dst      Array to receive exactly toSize characters.
+    * @param dstOff   Index in dst at which to start.
+    * @param toSize   Desired length.
+    * @param withChar Character to use for padding.
+    *
+    * @return Index in dst after the last character written.
+    */
+   public static int padRight(char[] src, int srcOff, int len, char[] dst,
+         int dstOff, int toSize, char withChar) {
+      // If the source is longer than the given size, truncate it.
+      int n = Math.min(len, toSize);
+
+      System.arraycopy(src, srcOff, dst, dstOff, n);
+      Arrays.fill(dst, dstOff + n, dstOff + toSize, withChar);
+
+      return dstOff + toSize;
+   }
+
    // -------------------------------------------------------------------------
    // padCenter
    // -------------------------------------------------------------------------
@@ -799,6 +1593,38 @@ public final class StrUtil {
       return sb;
    }
 
+   /**
+    * Pad part of a character array to the center to the given size with the
+    * given character, writing the result to another array. If the source is
+    * longer than the specified size, it is truncated. The arrays must not
+    * overlap.
+    *
+    * @param src      Characters to pad.
+    * @param srcOff   Index of first source character.
+    * @param len      Number of source characters.
+    * @param dst      Array to receive exactly toSize characters.
+    * @param dstOff   Index in dst at which to start.
+    * @param toSize   Desired length.
+    * @param withChar Character to use for padding.
+    *
+    * @return Index in dst after the last character written.
+    */
+   public static int padCenter(char[] src, int srcOff, int len, char[] dst,
+         int dstOff, int toSize, char withChar) {
+      // If the source is longer than the given size, truncate it.
+      int n = Math.min(len, toSize);
+
+      // Pad the beginning with half of the padding and the end with the
+      // rest, so that an odd character goes at the end.
+      int before = (toSize - n) / 2;
+
+      Arrays.fill(dst, dstOff, dstOff + before, withChar);
+      System.arraycopy(src, srcOff, dst, dstOff + before, n);
+      Arrays.fill(dst, dstOff + before + n, dstOff + toSize, withChar);
+
+      return dstOff + toSize;
+   }
+
    // -------------------------------------------------------------------------
    // replace
    // -------------------------------------------------------------------------
@@ -843,13 +1669,20 @@ public final class StrUtil {
     */
    public static StringBuffer replace(StringBuffer sb, String target, 
          String replacement) {
-      int ol = target.length();  // Length of string to replace.
-      int s = 0;                 // Starting position for indexOf().
-      int i = 0;                 // Index of old string.
+      long t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      int  length = sb.length();  // Length before replacing.
+      int  ol = target.length();  // Length of string to replace.
+      int  s = 0;                 // Starting position for find().
+      int  i = 0;                 // Index of old string.
+      int  n = 0;                 // Number of replacements.
+
+      StrUtilEvent event = StrUtilEvent.begin("replace", length);
 
       if ((! target.equals(replacement)) && (ol > 0)) {
+         SearchPlan plan = SearchPlanCache.get(target);
+
          while (s < sb.length()) {
-            i = indexOf(sb, target, s);
+            i = plan.indexOf(sb, s);
 
             if (i < 0) {
                break;
@@ -857,11 +1690,18 @@ public final class StrUtil {
 
             sb.delete(i, i + ol);
             sb.insert(i, replacement);
+            n ++;
 
             s = i + replacement.length();
          }
       }
 
+      StrUtilEvent.commit(event, n);
+
+      if (StrUtilStats.ENABLED) {
+         StrUtilStats.record(StrUtilStats.REPLACE, t0, length);
+      }
+
       return sb;
    }
 
@@ -876,17 +1716,55 @@ public final class StrUtil {
     */
    public static StringBuffer replace(StringBuffer sb, char target, 
          char replacement) {
+      long t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      int  n = 0;
+
+      StrUtilEvent event = StrUtilEvent.begin("replace", sb.length());
+
       if (target != replacement) {
          for (int i = 0; i < sb.length(); i ++) {
             if (sb.charAt(i) == target) {
                sb.setCharAt(i, replacement);
+               n ++;
             }
          }
       }
 
+      StrUtilEvent.commit(event, n);
+
+      if (StrUtilStats.ENABLED) {
+         StrUtilStats.record(StrUtilStats.REPLACE, t0, sb.length());
+      }
+
       return sb;
    }
 
+   /**
+    * Replace one character with another within part of a character array.
+    *
+    * @param arr         Array in which to do replacing.
+    * @param off         Index of first character.
+    * @param len         Number of characters.
+    * @param target      Character to replace.
+    * @param replacement Character with which to replace target.
+    *
+    * @return Number of characters replaced.
+    */
+   public static int replace(char[] arr, int off, int len, char target,
+         char replacement) {
+      int count = 0;
+      int end = off + len;
+
+      for (int i = off; i < end; i ++) {
+         if (arr[i] == target) {
+            arr[i] = replacement;
+            count ++;
+         }
+      }
+
+      return count;
+   }
+
    // -------------------------------------------------------------------------
    // replicate
    // -------------------------------------------------------------------------
@@ -983,10 +1861,15 @@ public final class StrUtil {
     * @return Wrapped buffer.
     */
    public static StringBuffer wordWrap(StringBuffer sb, int width) {
+      long t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      int  length = sb.length();
       char c;
       int  colsAcross = 0;
       int  sIndex = -1;
       int  i = 0;
+      int  breaks = 0;
+
+      StrUtilEvent event = StrUtilEvent.begin("wordWrap", length);
 
       // Iterate through the buffer.
       while (i < sb.length()) {
@@ -1014,12 +1897,14 @@ public final class StrUtil {
             if (sIndex > -1) {
                sb.setCharAt(sIndex, '\n');
                colsAcross = 0;
+               breaks ++;
             } else {
                i ++;
 
                if (i < sb.length()) {
                   sb.insert(i, '\n');
                   colsAcross = 0;
+                  breaks ++;
                }
             }
          }
@@ -1027,6 +1912,12 @@ public final class StrUtil {
          i ++;
       }
 
+      StrUtilEvent.commit(event, breaks);
+
+      if (StrUtilStats.ENABLED) {
+         StrUtilStats.record(StrUtilStats.WORDWRAP, t0, length);
+      }
+
       // Return the wrapped buffer.
       return sb;
    }
@@ -1059,6 +1950,8 @@ public final class StrUtil {
     * @return Wrapped buffer.
     */
    public static StringBuffer wrap(StringBuffer sb, int width) {
+      long t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      int  length = sb.length();
       char c;
       int  colsAcross = 0;
       int  sIndex = -1;
@@ -1089,6 +1982,10 @@ public final class StrUtil {
          i ++;
       }
 
+      if (StrUtilStats.ENABLED) {
+         StrUtilStats.record(StrUtilStats.WRAP, t0, length);
+      }
+
       // Return the wrapped buffer.
       return sb;
    }
@@ -1112,35 +2009,80 @@ public final class StrUtil {
     * @return Array of strings.
     */
    public static String[] split(String str, String delimiter) {
-      int          delimIndex = 0;
-      int          startIndex = 0;
-      int          delimCount = 0;
-      StringBuffer sb = new StringBuffer(str);
-      String[]     arr = {};
+      return split(str, delimiter, null);
+   }
 
-      if (str != null) {
-         // Append delimiter to buffer (which makes parsing easier).
-         sb.append(delimiter);
+   /**
+    * Split a string into an array of strings, looking each one up in a
+    * token pool so that repeated tokens share one string. Tokens are looked
+    * up from their range of the string, so a token found in the pool makes
+    * no new string.
+    * <br><br>
+    * Example:
+    * <blockquote>
+    * s1 = "INFO,A,INFO"
+    * split(s1, ",", pool) => { "INFO", "A", "INFO" }, with one "INFO"
+    * </blockquote>
+    *
+    * @param str       String to split.
+    * @param delimiter Delimiter on which to split the string.
+    * @param pool      Pool in which to look up tokens; null for none.
+    *
+    * @return Array of strings.
+    *
+    * @see TokenPool
+    */
+   public static String[] split(String str, String delimiter,
+         TokenPool pool) {
+      long     t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      int      delimIndex = 0;
+      int      startIndex = 0;
+      int      delimCount = 0;
+      String[] arr = {};
 
-         // Count delimiters.
-         delimCount = count(sb, delimiter);
+      if ((str != null) && (delimiter != null) && (delimiter.length() > 0)) {
+         StrUtilEvent event = StrUtilEvent.begin("split", str.length());
+         byte[]       bytes = Latin1.encode(str);
+         byte[]       delim = (bytes == null) ? null : Latin1.encode(delimiter);
 
-         // If there is at least one delimiter, ...
-         if (delimCount > 0) {
-            arr = new String[delimCount];
+         if (delim != null) {
+            // Latin-1 text is split without widening it to chars.
+            arr = Latin1.split(bytes, 0, bytes.length, delim, pool);
+         } else {
+            SearchPlan plan = SearchPlanCache.get(delimiter);
+            int        dl = delimiter.length();
 
-            // Iterate through the buffer.
-            for (int i = 0; i < arr.length; i ++) {
+            // Count delimiters. Matches must not overlap, since the loop
+            // below steps over each delimiter it finds.
+            delimCount = plan.count(str, false);
+
+            arr = new String[delimCount + 1];
+
+            // Iterate through the string.
+            for (int i = 0; i < delimCount; i ++) {
                // Get index of delimiter.
-               delimIndex = indexOf(sb, delimiter, startIndex);
+               delimIndex = plan.indexOf(str, startIndex);
 
-               // Extract a substring from the buffer up to but not including the
-               // delimiter and put it in the array.
-               arr[i] = sb.substring(startIndex, delimIndex);
+               // Extract a substring up to but not including the delimiter
+               // and put it in the array.
+               arr[i] = (pool == null) ?
+                  str.substring(startIndex, delimIndex) :
+                  pool.intern(str, startIndex, delimIndex);
 
-               // Set the start index to the next position after the delimiter.
-               startIndex = delimIndex + delimiter.length();
+               // Set the start index to the next position after the
+               // delimiter.
+               startIndex = delimIndex + dl;
             }
+
+            // The text after the last delimiter is always included.
+            arr[delimCount] = (pool == null) ? str.substring(startIndex) :
+               pool.intern(str, startIndex, str.length());
+         }
+
+         StrUtilEvent.commit(event, arr.length);
+
+         if (StrUtilStats.ENABLED) {
+            StrUtilStats.record(StrUtilStats.SPLIT, t0, str.length());
          }
       }
 
@@ -1216,6 +2158,8 @@ public final class StrUtil {
     * @param strDelim  Delimiter between strings.
     *
     * @return Delimited string.
+    *
+    * @see PairParser
     */
    public static String merge(String[] arr1, String[] arr2, String pairDelim,
          String strDelim) {
@@ -1255,34 +2199,192 @@ public final class StrUtil {
     * @see #hexDecode(String)
     */
    public static String hexEncode(String str) {
-      return (str == null) ? "" : 
-         hexEncode(new StringBuffer(str)).toString();
+      if (str == null) {
+         return "";
+      }
+
+      long   t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      byte[] b = Latin1.encode(str);
+
+      if (b == null) {
+         return hexEncode(new StringBuffer(str)).toString();
+      }
+
+      byte[] hex = new byte[Latin1.hexEncodedLength(b, 0, b.length)];
+
+      Latin1.hexEncode(b, 0, b.length, hex, 0);
+
+      if (StrUtilStats.ENABLED) {
+         StrUtilStats.record(StrUtilStats.HEXENCODE, t0, b.length);
+      }
+
+      return Latin1.decode(hex, 0, hex.length);
+   }
+
+   /**
+    * Encodes the given string buffer as a series of hexadecimal values
+    * delimited with colons.
+    * <br><br>
+    * Example:
+    * <br><br>
+    * ABC --> 41:42:43
+    *
+    * @param sb The buffer to be encoded.
+    */
+   public static StringBuffer hexEncode(StringBuffer sb) {
+      long   t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      String temp = sb.toString();
+
+      sb.setLength(0);
+
+      for (int i = 0; i < temp.length(); i ++) {
+         if (i > 0) {
+            sb.append(':');
+         }
+
+         sb.append(Integer.toHexString((int) temp.charAt(i)));
+      }
+
+      if (StrUtilStats.ENABLED) {
+         StrUtilStats.record(StrUtilStats.HEXENCODE, t0, temp.length());
+      }
+
+      return sb;
+   }
+
+   /**
+    * Get the length of the hex encoding of part of a character array.
+    *
+    * @param src Characters to be encoded.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    *
+    * @return Number of characters that hexEncode() will write.
+    */
+   public static int hexEncodedLength(char[] src, int off, int len) {
+      int n = (len > 0) ? len - 1 : 0;   // Colons.
+      int end = off + len;
+
+      for (int i = off; i < end; i ++) {
+         n += hexDigits(src[i]);
+      }
+
+      return n;
+   }
+
+   /**
+    * Encodes part of a character array as a series of hexadecimal values
+    * delimited with colons, in the same form as hexEncode(String), writing
+    * the result to another array.
+    *
+    * @param src    Characters to be encoded.
+    * @param srcOff Index of first source character.
+    * @param len    Number of source characters.
+    * @param dst    Array to receive the encoding; must have room for
+    *               hexEncodedLength() characters.
+    * @param dstOff Index in dst at which to start.
+    *
+    * @return Index in dst after the last character written.
+    */
+   public static int hexEncode(char[] src, int srcOff, int len, char[] dst,
+         int dstOff) {
+      int end = srcOff + len;
+      int j = dstOff;
+
+      for (int i = srcOff; i < end; i ++) {
+         int c = src[i];
+         int n = hexDigits(c);
+
+         if (i > srcOff) {
+            dst[j ++] = ':';
+         }
+
+         // Write the digits from the least significant end.
+         for (int k = n - 1; k >= 0; k --) {
+            dst[j + k] = HEX_DIGITS[c & 0xF];
+            c >>>= 4;
+         }
+
+         j += n;
+      }
+
+      return j;
+   }
+
+   private static final char[] HEX_DIGITS = {
+      '0', '1', '2', '3', '4', '5', '6', '7',
+      '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+   };
+
+   /**
+    * Get the number of hex digits written for a character (as by
+    * Integer.toHexString()).
+    *
+    * @param c Character.
+    *
+    * @return Number of digits, 1-4.
+    */
+   private static int hexDigits(int c) {
+      return (c < 0x10) ? 1 : (c < 0x100) ? 2 : (c < 0x1000) ? 3 : 4;
+   }
+
+   /**
+    * Encodes the characters remaining in one buffer as a series of
+    * hexadecimal values delimited with colons, writing them to another
+    * buffer. Both buffers' positions are advanced.
+    *
+    * @param src Characters to be encoded.
+    * @param dst Buffer to receive the encoding.
+    *
+    * @return Reference to dst.
+    *
+    * @throws BufferOverflowException if dst is too small.
+    */
+   public static CharBuffer hexEncode(CharBuffer src, CharBuffer dst) {
+      for (boolean first = true; src.hasRemaining(); first = false) {
+         int c = src.get();
+         int n = hexDigits(c);
+
+         if (! first) {
+            dst.put(':');
+         }
+
+         for (int k = (n - 1) * 4; k >= 0; k -= 4) {
+            dst.put(HEX_DIGITS[(c >>> k) & 0xF]);
+         }
+      }
+
+      return dst;
    }
 
    /**
-    * Encodes the given string buffer as a series of hexadecimal values
-    * delimited with colons.
-    * <br><br>
-    * Example:
-    * <br><br>
-    * ABC --> 41:42:43
+    * Encodes the Latin-1 bytes remaining in one buffer as a series of
+    * hexadecimal values delimited with colons, writing them as ASCII to
+    * another buffer. Both buffers' positions are advanced.
     *
-    * @param sb The buffer to be encoded.
+    * @param src Bytes to be encoded.
+    * @param dst Buffer to receive the encoding.
+    *
+    * @return Reference to dst.
+    *
+    * @throws BufferOverflowException if dst is too small.
     */
-   public static StringBuffer hexEncode(StringBuffer sb) {
-      String temp = sb.toString();
+   public static ByteBuffer hexEncode(ByteBuffer src, ByteBuffer dst) {
+      for (boolean first = true; src.hasRemaining(); first = false) {
+         int c = src.get() & 0xFF;
 
-      sb.setLength(0);
+         if (! first) {
+            dst.put((byte) ':');
+         }
 
-      for (int i = 0; i < temp.length(); i ++) {
-         if (i > 0) {
-            sb.append(':');
+         if (c > 0xF) {
+            dst.put((byte) HEX_DIGITS[c >>> 4]);
          }
 
-         sb.append(Integer.toHexString((int) temp.charAt(i)));
+         dst.put((byte) HEX_DIGITS[c & 0xF]);
       }
 
-      return sb;
+      return dst;
    }
 
    // -------------------------------------------------------------------------
@@ -1302,8 +2404,29 @@ public final class StrUtil {
     * @param str The string to be decoded.
     */
    public static String hexDecode(String str) {
-      return (str == null) ? "" : 
-         hexDecode(new StringBuffer(str)).toString();
+      if (str == null) {
+         return "";
+      }
+
+      long         t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      StrUtilEvent event = StrUtilEvent.begin("hexDecode", str.length());
+      byte[]       b = Latin1.encode(str);
+      int          n = (b == null) ? -1 :
+         Latin1.hexDecode(b, 0, b.length, b, 0);
+
+      // Text that is not Latin-1, or that decodes to characters above 0xFF,
+      // takes the char path, which records itself; this event is dropped.
+      if (n < 0) {
+         return hexDecode(new StringBuffer(str)).toString();
+      }
+
+      StrUtilEvent.commit(event, n);
+
+      if (StrUtilStats.ENABLED) {
+         StrUtilStats.record(StrUtilStats.HEXDECODE, t0, b.length);
+      }
+
+      return Latin1.decode(b, 0, n);
    }
 
    /**
@@ -1319,8 +2442,11 @@ public final class StrUtil {
     * @param sb The buffer to be decoded.
     */
    public static StringBuffer hexDecode(StringBuffer sb) {
+      long            t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      int             length = sb.length();
       StringTokenizer tokenizer = new StringTokenizer(sb.toString(), ":");
       String          token;
+      StrUtilEvent    event = StrUtilEvent.begin("hexDecode", length);
 
       sb.setLength(0);
 
@@ -1334,13 +2460,142 @@ public final class StrUtil {
          }
       }
 
+      StrUtilEvent.commit(event, sb.length());
+
+      if (StrUtilStats.ENABLED) {
+         StrUtilStats.record(StrUtilStats.HEXDECODE, t0, length);
+      }
+
       return sb;
    }
 
+   /**
+    * Decodes part of a character array that contains a series of hexadecimal
+    * values delimited with colons, writing the characters to another array.
+    * Unrecognized tokens are converted to '?', as by hexDecode(String). The
+    * result is never longer than the input, so the destination may be the
+    * source array if dstOff is not greater than srcOff.
+    *
+    * @param src    Characters to be decoded.
+    * @param srcOff Index of first source character.
+    * @param len    Number of source characters.
+    * @param dst    Array to receive decoded characters.
+    * @param dstOff Index in dst at which to start.
+    *
+    * @return Index in dst after the last character written.
+    */
+   public static int hexDecode(char[] src, int srcOff, int len, char[] dst,
+         int dstOff) {
+      HexDecoder decoder = new HexDecoder();
+      int        end = srcOff + len;
+      int        j = dstOff;
+      int        c;
+
+      for (int i = srcOff; i < end; i ++) {
+         if ((c = decoder.accept(src[i])) != HexDecoder.NONE) {
+            dst[j ++] = (char) c;
+         }
+      }
+
+      if ((c = decoder.finish()) != HexDecoder.NONE) {
+         dst[j ++] = (char) c;
+      }
+
+      return j;
+   }
+
+   /**
+    * Decodes the characters remaining in one buffer, which contain a series
+    * of hexadecimal values delimited with colons, writing the decoded
+    * characters to another buffer. Unrecognized tokens are converted to '?'.
+    * Both buffers' positions are advanced.
+    *
+    * @param src Characters to be decoded.
+    * @param dst Buffer to receive decoded characters.
+    *
+    * @return Reference to dst.
+    *
+    * @throws BufferOverflowException if dst is too small.
+    */
+   public static CharBuffer hexDecode(CharBuffer src, CharBuffer dst) {
+      HexDecoder decoder = new HexDecoder();
+      int        c;
+
+      while (src.hasRemaining()) {
+         if ((c = decoder.accept(src.get())) != HexDecoder.NONE) {
+            dst.put((char) c);
+         }
+      }
+
+      if ((c = decoder.finish()) != HexDecoder.NONE) {
+         dst.put((char) c);
+      }
+
+      return dst;
+   }
+
+   /**
+    * Decodes the ASCII bytes remaining in one buffer, which contain a series
+    * of hexadecimal values delimited with colons, writing the decoded bytes
+    * to another buffer. Unrecognized tokens, and values above 0xFF, are
+    * converted to '?'. Both buffers' positions are advanced.
+    *
+    * @param src Bytes to be decoded.
+    * @param dst Buffer to receive decoded bytes.
+    *
+    * @return Reference to dst.
+    *
+    * @throws BufferOverflowException if dst is too small.
+    */
+   public static ByteBuffer hexDecode(ByteBuffer src, ByteBuffer dst) {
+      HexDecoder decoder = new HexDecoder();
+      int        c;
+
+      while (src.hasRemaining()) {
+         if ((c = decoder.accept(src.get() & 0xFF)) != HexDecoder.NONE) {
+            dst.put((byte) ((c > 0xFF) ? '?' : c));
+         }
+      }
+
+      if ((c = decoder.finish()) != HexDecoder.NONE) {
+         dst.put((byte) ((c > 0xFF) ? '?' : c));
+      }
+
+      return dst;
+   }
+
    // -------------------------------------------------------------------------
    // ROT13
    // -------------------------------------------------------------------------
 
+   /**
+    * Apply a transform to a Latin-1 string as bytes, recording it as the
+    * given operation.
+    *
+    * @param t    Transform to apply.
+    * @param str  String to transform.
+    * @param op   StrUtilStats operation identifier.
+    * @param name Operation name for events.
+    *
+    * @return Transformed string; null if str is not Latin-1.
+    */
+   private static String latin1(CharTransform t, String str, int op,
+         String name) {
+      long         t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      StrUtilEvent event = StrUtilEvent.begin(name, str.length());
+      String       s = t.applyLatin1(str);
+
+      if (s != null) {
+         StrUtilEvent.commit(event, s.length());
+
+         if (StrUtilStats.ENABLED) {
+            StrUtilStats.record(op, t0, s.length());
+         }
+      }
+
+      return s;
+   }
+
    /**
     * Transform the given string using the ROT13 algorithm.
     *
@@ -1349,7 +2604,38 @@ public final class StrUtil {
     * @return Transformed string.
     */
    public static String rot13(String str) {
-      return str == null ? "" : rot13(new StringBuffer(str)).toString();
+      if (str == null) {
+         return "";
+      }
+
+      String s = latin1(CharTransform.ROT13, str, StrUtilStats.ROT13,
+         "rot13");
+
+      return (s != null) ? s : rot13(new StringBuffer(str)).toString();
+   }
+
+   /**
+    * Transform the given strings using the ROT13 algorithm.
+    *
+    * @param arr Strings to transform.
+    *
+    * @return Transformed strings.
+    *
+    * @see CharTransform#apply(String[])
+    */
+   public static String[] rot13(String[] arr) {
+      return CharTransform.ROT13.apply(arr);
+   }
+
+   /**
+    * Transform the given strings using the ROT13 algorithm.
+    *
+    * @param list Strings to transform.
+    *
+    * @return New list of transformed strings.
+    */
+   public static List<String> rot13(List<String> list) {
+      return CharTransform.ROT13.apply(list);
    }
    
    /**
@@ -1360,8 +2646,21 @@ public final class StrUtil {
     * @return Reference to transformed buffer.
     */
    public static StringBuffer rot13(StringBuffer sb) {
-      for (int i = 0; i < sb.length(); i ++) {
-         sb.setCharAt(i, rot13(sb.charAt(i)));
+      long         t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      StrUtilEvent event = StrUtilEvent.begin("rot13", sb.length());
+
+      if (sb.length() >= Dispatch.bulkThreshold()) {
+         CharTransform.ROT13.apply(sb);
+      } else {
+         for (int i = 0; i < sb.length(); i ++) {
+            sb.setCharAt(i, rot13(sb.charAt(i)));
+         }
+      }
+
+      StrUtilEvent.commit(event, sb.length());
+
+      if (StrUtilStats.ENABLED) {
+         StrUtilStats.record(StrUtilStats.ROT13, t0, sb.length());
       }
 
       return sb;
@@ -1393,6 +2692,59 @@ public final class StrUtil {
       return ce;
    }
 
+   /**
+    * Transform part of a character array in place with the ROT13
+    * algorithm.
+    *
+    * @param arr Array to transform.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    */
+   public static void rot13(char[] arr, int off, int len) {
+      CharTransform.ROT13.apply(arr, off, len);
+   }
+
+   /**
+    * Transform part of a character array with the ROT13 algorithm,
+    * writing the result to another array. The arrays may be the same.
+    *
+    * @param src    Characters to transform.
+    * @param srcOff Index of first source character.
+    * @param dst    Array to receive transformed characters.
+    * @param dstOff Index of first destination character.
+    * @param len    Number of characters.
+    */
+   public static void rot13(char[] src, int srcOff, char[] dst,
+         int dstOff, int len) {
+      System.arraycopy(src, srcOff, dst, dstOff, len);
+      rot13(dst, dstOff, len);
+   }
+
+   /**
+    * Transform the characters between the position and limit of a buffer in
+    * place with the ROT13 algorithm. The position is not changed.
+    *
+    * @param buf Buffer to transform.
+    *
+    * @return Reference to buf.
+    */
+   public static CharBuffer rot13(CharBuffer buf) {
+      return CharTransform.ROT13.apply(buf);
+   }
+
+   /**
+    * Transform the Latin-1 bytes between the position and limit of a buffer
+    * in place with the ROT13 algorithm. The position is not changed.
+    * Direct buffers are transformed without copying to the heap.
+    *
+    * @param buf Buffer to transform.
+    *
+    * @return Reference to buf.
+    */
+   public static ByteBuffer rot13(ByteBuffer buf) {
+      return CharTransform.ROT13.apply(buf);
+   }
+
    // -------------------------------------------------------------------------
    // ROT13N5
    // -------------------------------------------------------------------------
@@ -1405,7 +2757,38 @@ public final class StrUtil {
     * @return Transformed string.
     */
    public static String rot13n5(String str) {
-      return str == null ? "" : rot13n5(new StringBuffer(str)).toString();
+      if (str == null) {
+         return "";
+      }
+
+      String s = latin1(CharTransform.ROT13N5, str, StrUtilStats.ROT13N5,
+         "rot13n5");
+
+      return (s != null) ? s : rot13n5(new StringBuffer(str)).toString();
+   }
+
+   /**
+    * Transform the given strings with the ROT13N5 algorithm.
+    *
+    * @param arr Strings to transform.
+    *
+    * @return Transformed strings.
+    *
+    * @see CharTransform#apply(String[])
+    */
+   public static String[] rot13n5(String[] arr) {
+      return CharTransform.ROT13N5.apply(arr);
+   }
+
+   /**
+    * Transform the given strings with the ROT13N5 algorithm.
+    *
+    * @param list Strings to transform.
+    *
+    * @return New list of transformed strings.
+    */
+   public static List<String> rot13n5(List<String> list) {
+      return CharTransform.ROT13N5.apply(list);
    }
 
    /**
@@ -1416,8 +2799,21 @@ public final class StrUtil {
     * @return Reference to modified buffer.
     */
    public static StringBuffer rot13n5(StringBuffer sb) {
-      for (int i = 0; i < sb.length(); i ++) {
-         sb.setCharAt(i, rot13n5(sb.charAt(i)));
+      long         t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      StrUtilEvent event = StrUtilEvent.begin("rot13n5", sb.length());
+
+      if (sb.length() >= Dispatch.bulkThreshold()) {
+         CharTransform.ROT13N5.apply(sb);
+      } else {
+         for (int i = 0; i < sb.length(); i ++) {
+            sb.setCharAt(i, rot13n5(sb.charAt(i)));
+         }
+      }
+
+      StrUtilEvent.commit(event, sb.length());
+
+      if (StrUtilStats.ENABLED) {
+         StrUtilStats.record(StrUtilStats.ROT13N5, t0, sb.length());
       }
 
       return sb;
@@ -1449,6 +2845,59 @@ public final class StrUtil {
       return ce;
    }
 
+   /**
+    * Transform part of a character array in place with the ROT13N5
+    * algorithm.
+    *
+    * @param arr Array to transform.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    */
+   public static void rot13n5(char[] arr, int off, int len) {
+      CharTransform.ROT13N5.apply(arr, off, len);
+   }
+
+   /**
+    * Transform part of a character array with the ROT13N5 algorithm,
+    * writing the result to another array. The arrays may be the same.
+    *
+    * @param src    Characters to transform.
+    * @param srcOff Index of first source character.
+    * @param dst    Array to receive transformed characters.
+    * @param dstOff Index of first destination character.
+    * @param len    Number of characters.
+    */
+   public static void rot13n5(char[] src, int srcOff, char[] dst,
+         int dstOff, int len) {
+      System.arraycopy(src, srcOff, dst, dstOff, len);
+      rot13n5(dst, dstOff, len);
+   }
+
+   /**
+    * Transform the characters between the position and limit of a buffer in
+    * place with the ROT13N5 algorithm. The position is not changed.
+    *
+    * @param buf Buffer to transform.
+    *
+    * @return Reference to buf.
+    */
+   public static CharBuffer rot13n5(CharBuffer buf) {
+      return CharTransform.ROT13N5.apply(buf);
+   }
+
+   /**
+    * Transform the Latin-1 bytes between the position and limit of a buffer
+    * in place with the ROT13N5 algorithm. The position is not changed.
+    * Direct buffers are transformed without copying to the heap.
+    *
+    * @param buf Buffer to transform.
+    *
+    * @return Reference to buf.
+    */
+   public static ByteBuffer rot13n5(ByteBuffer buf) {
+      return CharTransform.ROT13N5.apply(buf);
+   }
+
    //--------------------------------------------------------------------------
    // ROTASCII
    //--------------------------------------------------------------------------
@@ -1462,8 +2911,53 @@ public final class StrUtil {
     * @return Transformed string.
     */
    public static String rotAscii(String str, int rlen) {
-      return str == null ? "" : 
-         rotAscii(new StringBuffer(str), rlen).toString();
+      if (str == null) {
+         return "";
+      }
+
+      long   t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      byte[] b = Latin1.encode(str);
+
+      if (b == null) {
+         return rotAscii(new StringBuffer(str), rlen).toString();
+      }
+
+      StrUtilEvent event = StrUtilEvent.begin("rotAscii", b.length);
+
+      Latin1.rotAscii(b, 0, b.length, rlen);
+      StrUtilEvent.commit(event, b.length);
+
+      if (StrUtilStats.ENABLED) {
+         StrUtilStats.record(StrUtilStats.ROTASCII, t0, b.length);
+      }
+
+      return Latin1.decode(b, 0, b.length);
+   }
+
+   /**
+    * Transform the given strings with the ROTASCII algorithm.
+    *
+    * @param arr  Strings to transform.
+    * @param rlen Rotation length.
+    *
+    * @return Transformed strings.
+    *
+    * @see CharTransform#apply(String[])
+    */
+   public static String[] rotAscii(String[] arr, int rlen) {
+      return CharTransform.foldingRotAscii(rlen).apply(arr);
+   }
+
+   /**
+    * Transform the given strings with the ROTASCII algorithm.
+    *
+    * @param list Strings to transform.
+    * @param rlen Rotation length.
+    *
+    * @return New list of transformed strings.
+    */
+   public static List<String> rotAscii(List<String> list, int rlen) {
+      return CharTransform.foldingRotAscii(rlen).apply(list);
    }
 
    /**
@@ -1475,10 +2969,19 @@ public final class StrUtil {
     * @return Reference to modified buffer.
     */
    public static StringBuffer rotAscii(StringBuffer sb, int rlen) {
+      long         t0 = StrUtilStats.ENABLED ? System.nanoTime() : 0L;
+      StrUtilEvent event = StrUtilEvent.begin("rotAscii", sb.length());
+
       for (int i = 0; i < sb.length(); i ++) {
          sb.setCharAt(i, rotAscii(sb.charAt(i), rlen));
       }
 
+      StrUtilEvent.commit(event, sb.length());
+
+      if (StrUtilStats.ENABLED) {
+         StrUtilStats.record(StrUtilStats.ROTASCII, t0, sb.length());
+      }
+
       return sb;
    }
 
@@ -1497,4 +3000,115 @@ public final class StrUtil {
 
       return (char) ce;
    }
+
+   /**
+    * Transform part of a character array in place with the ROTASCII
+    * algorithm.
+    *
+    * @param arr Array to transform.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    * @param rlen Rotation length.
+    */
+   public static void rotAscii(char[] arr, int off, int len, int rlen) {
+      int end = off + len;
+
+      // (c + rlen) mod 256, as in rotAscii(char, int). Overflow doesn't
+      // matter, since 2^32 is a multiple of 256.
+      for (int i = off; i < end; i ++) {
+         arr[i] = (char) ((arr[i] + rlen) & 0xFF);
+      }
+   }
+
+   /**
+    * Transform part of a character array with the ROTASCII algorithm,
+    * writing the result to another array. The arrays may be the same.
+    *
+    * @param src    Characters to transform.
+    * @param srcOff Index of first source character.
+    * @param dst    Array to receive transformed characters.
+    * @param dstOff Index of first destination character.
+    * @param len    Number of characters.
+    * @param rlen   Rotation length.
+    */
+   public static void rotAscii(char[] src, int srcOff, char[] dst,
+         int dstOff, int len, int rlen) {
+      System.arraycopy(src, srcOff, dst, dstOff, len);
+      rotAscii(dst, dstOff, len, rlen);
+   }
+
+   /**
+    * Transform the characters between the position and limit of a buffer in
+    * place with the ROTASCII algorithm. The position is not changed.
+    *
+    * @param buf Buffer to transform.
+    * @param rlen Rotation length.
+    *
+    * @return Reference to buf.
+    */
+   public static CharBuffer rotAscii(CharBuffer buf, int rlen) {
+      if (buf.hasArray()) {
+         rotAscii(buf.array(), buf.arrayOffset() + buf.position(),
+            buf.remaining(), rlen);
+      } else {
+         for (int i = buf.position(); i < buf.limit(); i ++) {
+            buf.put(i, (char) ((buf.get(i) + rlen) & 0xFF));
+         }
+      }
+
+      return buf;
+   }
+
+   /**
+    * Transform the Latin-1 bytes between the position and limit of a buffer
+    * in place with the ROTASCII algorithm. The position is not changed.
+    * Direct buffers are transformed without copying to the heap.
+    *
+    * @param buf Buffer to transform.
+    * @param rlen Rotation length.
+    *
+    * @return Reference to buf.
+    */
+   public static ByteBuffer rotAscii(ByteBuffer buf, int rlen) {
+      for (int i = buf.position(); i < buf.limit(); i ++) {
+         buf.put(i, (byte) (buf.get(i) + rlen));
+      }
+
+      return buf;
+   }
+
+   //--------------------------------------------------------------------------
+   // ROTUNICODE
+   //--------------------------------------------------------------------------
+
+   /**
+    * Transform the given string by rotating letters and digits within their
+    * own script alphabets. Unlike rotAscii(), characters above 255 are not
+    * corrupted.
+    *
+    * @param str  String to transform.
+    * @param rlen Rotation length.
+    *
+    * @return Transformed string.
+    *
+    * @see UnicodeRotation
+    */
+   public static String rotUnicode(String str, int rlen) {
+      return UnicodeRotation.of(rlen).apply(str);
+   }
+
+   /**
+    * Transform the given buffer by rotating letters and digits within their
+    * own script alphabets.
+    *
+    * @param sb   String buffer to transform.
+    * @param rlen Rotation length.
+    *
+    * @return Reference to modified buffer.
+    *
+    * @see UnicodeRotation
+    */
+   public static StringBuffer rotUnicode(StringBuffer sb, int rlen) {
+      return UnicodeRotation.of(rlen).apply(sb);
+   }
 }
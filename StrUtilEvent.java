@@ -0,0 +1,72 @@
+// package org.javacogs;
+
+import jdk.jfr.*;
+
+/**
+ * StrUtilEvent is the Java Flight Recorder event emitted for expensive StrUtil
+ * calls. An event is only created for inputs of at least the number of
+ * characters given by the system property "strutil.jfr.threshold" (default
+ * 65536), and only while a recording has the event enabled.
+ */
+@Name("org.javacogs.StrUtil")
+@Label("StrUtil Operation")
+@Category({ "Java Application", "StrUtil" })
+@Description("StrUtil call on a large input")
+public final class StrUtilEvent extends Event {
+   /**
+    * Minimum input length, in characters, for which events are created.
+    */
+   public static final int THRESHOLD =
+      Integer.getInteger("strutil.jfr.threshold", 65536).intValue();
+
+   @Label("Operation")
+   String operation;
+
+   @Label("Input Length")
+   @Description("Number of input characters")
+   int inputLength;
+
+   @Label("Count")
+   @Description("Matches, replacements, tokens, or characters produced")
+   int count;
+
+   /**
+    * Start an event for an operation if the input is large enough and the
+    * event is enabled.
+    *
+    * @param operation Operation name.
+    * @param length    Number of input characters.
+    *
+    * @return Started event, or null if no event is to be recorded.
+    */
+   static StrUtilEvent begin(String operation, int length) {
+      if (length < THRESHOLD) {
+         return null;
+      }
+
+      StrUtilEvent event = new StrUtilEvent();
+
+      if (! event.isEnabled()) {
+         return null;
+      }
+
+      event.operation = operation;
+      event.inputLength = length;
+      event.begin();
+
+      return event;
+   }
+
+   /**
+    * End and commit an event started with begin().
+    *
+    * @param event Event to commit; may be null.
+    * @param count Operation-specific result count.
+    */
+   static void commit(StrUtilEvent event, int count) {
+      if (event != null) {
+         event.count = count;
+         event.commit();
+      }
+   }
+}
@@ -0,0 +1,535 @@
+// package org.javacogs;
+
+import java.nio.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * StrUtilProcessor is a reactive-streams stage that applies a StrUtil
+ * operation to a stream of CharBuffer or ByteBuffer chunks. It requests one
+ * chunk at a time from upstream, and only while every subscriber has asked
+ * for more than is already buffered for it, so a slow subscriber holds up
+ * the upstream publisher instead of making the processor buffer without
+ * limit. Nothing is requested until the first subscriber attaches, so no
+ * chunk is lost to an empty audience.
+ * <br><br>
+ * Delivery runs on the given executor. Many processors can share one
+ * executor, so chunks from many streams are transformed by the same pool.
+ * <br><br>
+ * Operations such as wrap and hex decoding keep state between chunks, so a
+ * line or token may span chunk boundaries. Rotations transform each chunk in
+ * place and pass the same buffer downstream, so publishers must not reuse
+ * a chunk after submitting it.
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * publisher.subscribe(p = StrUtilProcessor.rot13(pool, 16))<br>
+ * p.subscribe(subscriber)
+ * </blockquote>
+ *
+ * @see java.util.concurrent.SubmissionPublisher
+ */
+public class StrUtilProcessor<T extends Buffer> extends SubmissionPublisher<T>
+      implements Flow.Processor<T, T> {
+   /**
+    * Chunk is one step of a chunked operation.
+    */
+   public interface Chunk<T> {
+      /**
+       * Transform one chunk.
+       *
+       * @param chunk Chunk to transform, between position and limit.
+       *
+       * @return Transformed chunk, ready to read.
+       */
+      T apply(T chunk);
+
+      /**
+       * Finish the operation at the end of the stream.
+       *
+       * @return Final chunk, or null if there is nothing left to publish.
+       */
+      T finish();
+   }
+
+   private final Chunk<T>              chunk;
+   private volatile Flow.Subscription  subscription;
+   private final AtomicBoolean         idle = new AtomicBoolean();
+   private final AtomicBoolean         completed = new AtomicBoolean();
+
+   /**
+    * Create a processor.
+    *
+    * @param executor          Executor on which to deliver chunks.
+    * @param maxBufferCapacity Maximum number of chunks buffered for each
+    *                          subscriber.
+    * @param chunk             Operation to apply.
+    */
+   public StrUtilProcessor(Executor executor, int maxBufferCapacity,
+         Chunk<T> chunk) {
+      super(executor, maxBufferCapacity);
+      this.chunk = chunk;
+   }
+
+   /**
+    * Add a subscriber. Its requests are passed on upstream, so chunks are
+    * only pulled in while some subscriber is waiting for one.
+    *
+    * @param subscriber Subscriber.
+    */
+   public void subscribe(Flow.Subscriber<? super T> subscriber) {
+      super.subscribe(new Downstream<T>(this, subscriber));
+
+      // Completion that arrived with no one to deliver it to.
+      if (completed.compareAndSet(true, false)) {
+         complete();
+      }
+
+      pull();
+   }
+
+   /**
+    * Request the next chunk from upstream if none is outstanding and every
+    * subscriber has asked for more than is already buffered for it.
+    * Without a subscriber nothing is requested, since submit() drops chunks
+    * that nobody has subscribed to.
+    */
+   private void pull() {
+      Flow.Subscription s = subscription;
+
+      if ((s != null) && hasSubscribers() && (estimateMinimumDemand() > 0) &&
+            idle.compareAndSet(true, false)) {
+         s.request(1);
+      }
+   }
+
+   // -------------------------------------------------------------------------
+   // Flow.Subscriber
+   // -------------------------------------------------------------------------
+
+   public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      idle.set(true);
+      pull();
+   }
+
+   public void onNext(T item) {
+      T result;
+
+      try {
+         result = chunk.apply(item);
+      } catch(RuntimeException ex) {
+         subscription.cancel();
+         closeExceptionally(ex);
+         return;
+      }
+
+      // Only requested chunks arrive, so a subscriber has room for this.
+      submit(result);
+      idle.set(true);
+      pull();
+   }
+
+   public void onError(Throwable t) {
+      closeExceptionally(t);
+   }
+
+   public void onComplete() {
+      // Hold the final chunk until a subscriber attaches to receive it.
+      completed.set(true);
+
+      if (hasSubscribers() && completed.compareAndSet(true, false)) {
+         complete();
+      }
+   }
+
+   private void complete() {
+      T result = chunk.finish();
+
+      if (result != null) {
+         submit(result);
+      }
+
+      close();
+   }
+
+   /**
+    * Downstream passes a subscriber's requests back to the processor, so
+    * that upstream demand follows downstream demand.
+    */
+   private static final class Downstream<T> implements Flow.Subscriber<T> {
+      private final StrUtilProcessor<?>        processor;
+      private final Flow.Subscriber<? super T> subscriber;
+
+      Downstream(StrUtilProcessor<?> processor,
+            Flow.Subscriber<? super T> subscriber) {
+         this.processor = processor;
+         this.subscriber = subscriber;
+      }
+
+      public void onSubscribe(final Flow.Subscription s) {
+         subscriber.onSubscribe(new Flow.Subscription() {
+            public void request(long n) {
+               s.request(n);
+               processor.pull();
+            }
+
+            public void cancel() {
+               s.cancel();
+               processor.pull();
+            }
+         });
+      }
+
+      public void onNext(T item) {
+         subscriber.onNext(item);
+      }
+
+      public void onError(Throwable t) {
+         subscriber.onError(t);
+      }
+
+      public void onComplete() {
+         subscriber.onComplete();
+      }
+   }
+
+   // -------------------------------------------------------------------------
+   // factories
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get a processor that applies ROT13 to character chunks.
+    *
+    * @param executor Executor on which to deliver chunks.
+    * @param capacity Maximum number of chunks buffered for each subscriber.
+    *
+    * @return Processor.
+    */
+   public static StrUtilProcessor<CharBuffer> rot13(Executor executor,
+         int capacity) {
+      return transform(CharTransform.ROT13, executor, capacity);
+   }
+
+   /**
+    * Get a processor that applies ROT13N5 to character chunks.
+    *
+    * @param executor Executor on which to deliver chunks.
+    * @param capacity Maximum number of chunks buffered for each subscriber.
+    *
+    * @return Processor.
+    */
+   public static StrUtilProcessor<CharBuffer> rot13n5(Executor executor,
+         int capacity) {
+      return transform(CharTransform.ROT13N5, executor, capacity);
+   }
+
+   /**
+    * Get a processor that applies ROTASCII to character chunks.
+    *
+    * @param rlen     Rotation length.
+    * @param executor Executor on which to deliver chunks.
+    * @param capacity Maximum number of chunks buffered for each subscriber.
+    *
+    * @return Processor.
+    */
+   public static StrUtilProcessor<CharBuffer> rotAscii(int rlen,
+         Executor executor, int capacity) {
+      return transform(CharTransform.foldingRotAscii(rlen), executor,
+         capacity);
+   }
+
+   /**
+    * Get a processor that applies a character transform to character chunks
+    * in place.
+    *
+    * @param t        Transform to apply.
+    * @param executor Executor on which to deliver chunks.
+    * @param capacity Maximum number of chunks buffered for each subscriber.
+    *
+    * @return Processor.
+    */
+   public static StrUtilProcessor<CharBuffer> transform(final CharTransform t,
+         Executor executor, int capacity) {
+      return new StrUtilProcessor<CharBuffer>(executor, capacity,
+         new Chunk<CharBuffer>() {
+            public CharBuffer apply(CharBuffer chunk) {
+               return t.apply(chunk);
+            }
+
+            public CharBuffer finish() {
+               return null;
+            }
+         });
+   }
+
+   /**
+    * Get a processor that applies a character transform to chunks of Latin-1
+    * bytes in place.
+    *
+    * @param t        Transform to apply.
+    * @param executor Executor on which to deliver chunks.
+    * @param capacity Maximum number of chunks buffered for each subscriber.
+    *
+    * @return Processor.
+    */
+   public static StrUtilProcessor<ByteBuffer> transformBytes(
+         final CharTransform t, Executor executor, int capacity) {
+      return new StrUtilProcessor<ByteBuffer>(executor, capacity,
+         new Chunk<ByteBuffer>() {
+            public ByteBuffer apply(ByteBuffer chunk) {
+               return t.apply(chunk);
+            }
+
+            public ByteBuffer finish() {
+               return null;
+            }
+         });
+   }
+
+   /**
+    * Get a processor that wraps character chunks at the given width, as
+    * StrUtil.wrap() does.
+    *
+    * @param width    Width at which to wrap.
+    * @param executor Executor on which to deliver chunks.
+    * @param capacity Maximum number of chunks buffered for each subscriber.
+    *
+    * @return Processor.
+    */
+   public static StrUtilProcessor<CharBuffer> wrap(int width,
+         Executor executor, int capacity) {
+      return new StrUtilProcessor<CharBuffer>(executor, capacity,
+         new WrapChunk(width));
+   }
+
+   /**
+    * Get a processor that hex-encodes character chunks, as
+    * StrUtil.hexEncode() does.
+    *
+    * @param executor Executor on which to deliver chunks.
+    * @param capacity Maximum number of chunks buffered for each subscriber.
+    *
+    * @return Processor.
+    */
+   public static StrUtilProcessor<CharBuffer> hexEncode(Executor executor,
+         int capacity) {
+      return new StrUtilProcessor<CharBuffer>(executor, capacity,
+         new HexEncodeChunk());
+   }
+
+   /**
+    * Get a processor that hex-decodes character chunks, as
+    * StrUtil.hexDecode() does.
+    *
+    * @param executor Executor on which to deliver chunks.
+    * @param capacity Maximum number of chunks buffered for each subscriber.
+    *
+    * @return Processor.
+    */
+   public static StrUtilProcessor<CharBuffer> hexDecode(Executor executor,
+         int capacity) {
+      return new StrUtilProcessor<CharBuffer>(executor, capacity,
+         new HexDecodeChunk());
+   }
+
+   /**
+    * Get a processor that hex-encodes chunks of Latin-1 bytes as ASCII, as
+    * StrUtil.hexEncode(ByteBuffer, ByteBuffer) does.
+    *
+    * @param executor Executor on which to deliver chunks.
+    * @param capacity Maximum number of chunks buffered for each subscriber.
+    *
+    * @return Processor.
+    */
+   public static StrUtilProcessor<ByteBuffer> hexEncodeBytes(
+         Executor executor, int capacity) {
+      return new StrUtilProcessor<ByteBuffer>(executor, capacity,
+         new HexEncodeByteChunk());
+   }
+
+   /**
+    * Get a processor that hex-decodes chunks of ASCII bytes to Latin-1, as
+    * StrUtil.hexDecode(ByteBuffer, ByteBuffer) does.
+    *
+    * @param executor Executor on which to deliver chunks.
+    * @param capacity Maximum number of chunks buffered for each subscriber.
+    *
+    * @return Processor.
+    */
+   public static StrUtilProcessor<ByteBuffer> hexDecodeBytes(
+         Executor executor, int capacity) {
+      return new StrUtilProcessor<ByteBuffer>(executor, capacity,
+         new HexDecodeByteChunk());
+   }
+
+   // -------------------------------------------------------------------------
+   // chunked operations
+   // -------------------------------------------------------------------------
+
+   /**
+    * WrapChunk wraps text at a fixed width across chunks.
+    */
+   private static final class WrapChunk implements Chunk<CharBuffer> {
+      private final int width;
+      private int       colsAcross = 0;
+      private boolean   pending = false;   // Newline owed before next char.
+
+      WrapChunk(int width) {
+         this.width = width;
+      }
+
+      public CharBuffer apply(CharBuffer chunk) {
+         int        n = chunk.remaining();
+         CharBuffer out = CharBuffer.allocate(
+            n + (n / Math.max(width, 1)) + 2);
+
+         while (chunk.hasRemaining()) {
+            char c = chunk.get();
+
+            // A newline is only inserted if another character follows, so
+            // it is written when that character arrives.
+            if (pending) {
+               out.put('\n');
+               pending = false;
+            }
+
+            out.put(c);
+            colsAcross ++;
+
+            if (c == '\n') {
+               colsAcross = 0;
+            }
+
+            if (colsAcross == width) {
+               pending = true;
+               colsAcross = 0;
+            }
+         }
+
+         out.flip();
+
+         return out;
+      }
+
+      public CharBuffer finish() {
+         return null;
+      }
+   }
+
+   /**
+    * HexEncodeChunk hex-encodes text, with a colon between chunks.
+    */
+   private static final class HexEncodeChunk implements Chunk<CharBuffer> {
+      private boolean first = true;
+
+      public CharBuffer apply(CharBuffer chunk) {
+         CharBuffer out = CharBuffer.allocate(chunk.remaining() * 5);
+
+         if (chunk.hasRemaining()) {
+            if (! first) {
+               out.put(':');
+            }
+
+            first = false;
+            StrUtil.hexEncode(chunk, out);
+         }
+
+         out.flip();
+
+         return out;
+      }
+
+      public CharBuffer finish() {
+         return null;
+      }
+   }
+
+   /**
+    * HexDecodeChunk hex-decodes text whose tokens may span chunks.
+    */
+   private static final class HexDecodeChunk implements Chunk<CharBuffer> {
+      private final HexDecoder decoder = new HexDecoder();
+
+      public CharBuffer apply(CharBuffer chunk) {
+         CharBuffer out = CharBuffer.allocate(chunk.remaining());
+         int        c;
+
+         while (chunk.hasRemaining()) {
+            if ((c = decoder.accept(chunk.get())) != HexDecoder.NONE) {
+               out.put((char) c);
+            }
+         }
+
+         out.flip();
+
+         return out;
+      }
+
+      public CharBuffer finish() {
+         int c = decoder.finish();
+
+         return (c == HexDecoder.NONE) ? null :
+            CharBuffer.wrap(new char[] { (char) c });
+      }
+   }
+
+   /**
+    * HexEncodeByteChunk hex-encodes Latin-1 bytes, with a colon between
+    * chunks.
+    */
+   private static final class HexEncodeByteChunk implements Chunk<ByteBuffer> {
+      private boolean first = true;
+
+      public ByteBuffer apply(ByteBuffer chunk) {
+         ByteBuffer out = ByteBuffer.allocate(chunk.remaining() * 3);
+
+         if (chunk.hasRemaining()) {
+            if (! first) {
+               out.put((byte) ':');
+            }
+
+            first = false;
+            StrUtil.hexEncode(chunk, out);
+         }
+
+         out.flip();
+
+         return out;
+      }
+
+      public ByteBuffer finish() {
+         return null;
+      }
+   }
+
+   /**
+    * HexDecodeByteChunk hex-decodes ASCII bytes whose tokens may span
+    * chunks.
+    */
+   private static final class HexDecodeByteChunk implements Chunk<ByteBuffer> {
+      private final HexDecoder decoder = new HexDecoder();
+
+      public ByteBuffer apply(ByteBuffer chunk) {
+         ByteBuffer out = ByteBuffer.allocate(chunk.remaining());
+         int        c;
+
+         while (chunk.hasRemaining()) {
+            if ((c = decoder.accept(chunk.get() & 0xFF)) != HexDecoder.NONE) {
+               out.put((byte) ((c > 0xFF) ? '?' : c));
+            }
+         }
+
+         out.flip();
+
+         return out;
+      }
+
+      public ByteBuffer finish() {
+         int c = decoder.finish();
+
+         return (c == HexDecoder.NONE) ? null :
+            ByteBuffer.wrap(new byte[] { (byte) ((c > 0xFF) ? '?' : c) });
+      }
+   }
+}
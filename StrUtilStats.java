@@ -0,0 +1,176 @@
+// package org.javacogs;
+
+import java.lang.management.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/**
+ * StrUtilStats collects call counts, character counts, and latency histograms
+ * for the StrUtil operations and publishes them as a platform MBean named
+ * "org.javacogs:type=StrUtilStats".
+ * <br><br>
+ * Collection is off unless the system property "strutil.stats" is set to
+ * "true" at startup. Because the switch is a static final constant, the
+ * instrumentation in StrUtil is compiled away when it is off.
+ * <br><br>
+ * Latency buckets are powers of two: bucket <i>i</i> counts calls that took
+ * less than 2^(i + 1) nanoseconds. The last bucket counts everything else.
+ *
+ * @see StrUtilStatsMBean
+ */
+public final class StrUtilStats implements StrUtilStatsMBean {
+   /**
+    * True if statistics are collected.
+    */
+   public static final boolean ENABLED = Boolean.getBoolean("strutil.stats");
+
+   // Operation identifiers. These index the counter arrays.
+   public static final int ROT13     = 0;
+   public static final int ROT13N5   = 1;
+   public static final int ROTASCII  = 2;
+   public static final int REPLACE   = 3;
+   public static final int SPLIT     = 4;
+   public static final int INDEXOF   = 5;
+   public static final int WORDWRAP  = 6;
+   public static final int WRAP      = 7;
+   public static final int HEXENCODE = 8;
+   public static final int HEXDECODE = 9;
+
+   private static final String[] NAMES = {
+      "rot13", "rot13n5", "rotAscii", "replace", "split", "indexOf",
+      "wordWrap", "wrap", "hexEncode", "hexDecode"
+   };
+
+   private static final int BUCKETS = 40;
+
+   private static final LongAdder[]   calls = adders(NAMES.length);
+   private static final LongAdder[]   chars = adders(NAMES.length);
+   private static final LongAdder[]   nanos = adders(NAMES.length);
+   private static final LongAdder[][] histograms =
+      new LongAdder[NAMES.length][];
+
+   static {
+      for (int i = 0; i < histograms.length; i ++) {
+         histograms[i] = adders(BUCKETS);
+      }
+
+      if (ENABLED) {
+         try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+               new StrUtilStats(),
+               new ObjectName("org.javacogs:type=StrUtilStats"));
+         } catch(JMException ex) {
+            // Statistics are still collected; they just can't be browsed.
+         }
+      }
+   }
+
+   /**
+    * Private constructor, so class can only be instantiated for the MBean.
+    */
+   private StrUtilStats() {
+   }
+
+   /**
+    * Record one call to an operation.
+    *
+    * @param op     Operation identifier.
+    * @param start  Value of System.nanoTime() when the call started.
+    * @param length Number of input characters.
+    */
+   public static void record(int op, long start, int length) {
+      long elapsed = System.nanoTime() - start;
+
+      calls[op].increment();
+      chars[op].add(length);
+      nanos[op].add(elapsed);
+      histograms[op][bucket(elapsed)].increment();
+   }
+
+   /**
+    * Get the latency bucket for the given elapsed time.
+    *
+    * @param elapsed Elapsed time in nanoseconds.
+    *
+    * @return Bucket index.
+    */
+   private static int bucket(long elapsed) {
+      int b = 63 - Long.numberOfLeadingZeros(elapsed | 1);
+
+      return (b < BUCKETS) ? b : BUCKETS - 1;
+   }
+
+   private static LongAdder[] adders(int n) {
+      LongAdder[] arr = new LongAdder[n];
+
+      for (int i = 0; i < n; i ++) {
+         arr[i] = new LongAdder();
+      }
+
+      return arr;
+   }
+
+   private static long[] sums(LongAdder[] arr) {
+      long[] values = new long[arr.length];
+
+      for (int i = 0; i < arr.length; i ++) {
+         values[i] = arr[i].sum();
+      }
+
+      return values;
+   }
+
+   // -------------------------------------------------------------------------
+   // StrUtilStatsMBean
+   // -------------------------------------------------------------------------
+
+   public String[] getOperationNames() {
+      return NAMES.clone();
+   }
+
+   public long[] getCallCounts() {
+      return sums(calls);
+   }
+
+   public long[] getCharCounts() {
+      return sums(chars);
+   }
+
+   public long[] getTotalNanos() {
+      return sums(nanos);
+   }
+
+   public long[] getBucketBounds() {
+      long[] bounds = new long[BUCKETS];
+
+      for (int i = 0; i < BUCKETS - 1; i ++) {
+         bounds[i] = 1L << (i + 1);
+      }
+
+      bounds[BUCKETS - 1] = Long.MAX_VALUE;
+
+      return bounds;
+   }
+
+   public long[] getHistogram(String operation) {
+      for (int i = 0; i < NAMES.length; i ++) {
+         if (NAMES[i].equals(operation)) {
+            return sums(histograms[i]);
+         }
+      }
+
+      return new long[0];
+   }
+
+   public void reset() {
+      for (int i = 0; i < NAMES.length; i ++) {
+         calls[i].reset();
+         chars[i].reset();
+         nanos[i].reset();
+
+         for (int j = 0; j < BUCKETS; j ++) {
+            histograms[i][j].reset();
+         }
+      }
+   }
+}
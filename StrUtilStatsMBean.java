@@ -0,0 +1,60 @@
+// package org.javacogs;
+
+/**
+ * StrUtilStatsMBean is the management interface through which the StrUtil
+ * operation statistics are published.
+ *
+ * @see StrUtilStats
+ */
+public interface StrUtilStatsMBean {
+   /**
+    * Get the names of the instrumented operations. The other array attributes
+    * are indexed in the same order.
+    *
+    * @return Operation names.
+    */
+   public String[] getOperationNames();
+
+   /**
+    * Get the number of calls to each operation.
+    *
+    * @return Call counts.
+    */
+   public long[] getCallCounts();
+
+   /**
+    * Get the number of input characters processed by each operation.
+    *
+    * @return Character counts.
+    */
+   public long[] getCharCounts();
+
+   /**
+    * Get the total time spent in each operation, in nanoseconds.
+    *
+    * @return Total times.
+    */
+   public long[] getTotalNanos();
+
+   /**
+    * Get the upper bound, in nanoseconds, of each latency bucket.
+    *
+    * @return Bucket bounds.
+    */
+   public long[] getBucketBounds();
+
+   /**
+    * Get the latency histogram of the given operation.
+    *
+    * @param operation Operation name.
+    *
+    * @return Number of calls in each latency bucket. Empty array if the
+    *         operation is unknown.
+    */
+   public long[] getHistogram(String operation);
+
+   /**
+    * Reset all counters.
+    */
+   public void reset();
+}
@@ -0,0 +1,349 @@
+// package org.javacogs;
+
+import java.lang.management.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/**
+ * TokenPool is a bounded, concurrent pool of strings for deduplicating the
+ * tokens cut from large inputs. Split output from logs and record files
+ * repeats the same few values - host names, levels, field names - millions
+ * of times; looking each token up in a pool makes the repeats share one
+ * string instead of each holding its own copy.
+ * <br><br>
+ * Tokens are looked up straight from a range of a char array, byte array,
+ * or CharSequence. The range is hashed as String.hashCode() would hash it,
+ * and compared with the pooled string in place, so a hit makes no string at
+ * all; only a miss makes the string it returns.
+ * <br><br>
+ * The pool is an array of slots, each holding one string, and a token may
+ * live in either of two neighbouring slots chosen by its hash. A miss fills
+ * an empty one of the two with a compare-and-set, or else replaces one of
+ * them, which counts as an eviction. Lookups neither lock nor allocate, and
+ * the pool never holds more strings than it has slots. Tokens longer than
+ * the maximum length are not pooled, since long values rarely repeat.
+ * <br><br>
+ * Hit, miss, and eviction counts are always kept. The shared pool is
+ * published as a platform MBean named "org.javacogs:type=TokenPool" when
+ * "strutil.stats" is "true"; its size is read from the system property
+ * "strutil.tokenpool.size" (default 4096).
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * StrUtil.split(line, " ", TokenPool.SHARED)
+ * </blockquote>
+ *
+ * @see StrUtil#split(String, String, TokenPool)
+ * @see RecordReader#getString(int, TokenPool)
+ * @see TokenPoolMBean
+ */
+public final class TokenPool implements TokenPoolMBean {
+   /**
+    * Pool shared by the library: tokens up to 64 characters.
+    */
+   public static final TokenPool SHARED = new TokenPool(
+      Math.max(1, Integer.getInteger("strutil.tokenpool.size", 4096)), 64);
+
+   static {
+      if (StrUtilStats.ENABLED) {
+         try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+               SHARED, new ObjectName("org.javacogs:type=TokenPool"));
+         } catch(JMException ex) {
+            // Statistics are still collected; they just can't be browsed.
+         }
+      }
+   }
+
+   private final AtomicReferenceArray<String> slots;
+   private final int                          mask;
+   private final int                          maxLength;
+   private final LongAdder                    hits = new LongAdder();
+   private final LongAdder                    misses = new LongAdder();
+   private final LongAdder                    evictions = new LongAdder();
+
+   /**
+    * Create a pool.
+    *
+    * @param size      Number of strings the pool can hold; rounded up to a
+    *                  power of two, at least 2.
+    * @param maxLength Length of the longest token to pool.
+    */
+   public TokenPool(int size, int maxLength) {
+      int n = (size <= 2) ? 2 : Integer.highestOneBit(size - 1) << 1;
+
+      this.slots = new AtomicReferenceArray<String>(n);
+      this.mask = n - 1;
+      this.maxLength = maxLength;
+   }
+
+   // -------------------------------------------------------------------------
+   // intern
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get the pooled string equal to part of a char array, pooling a new one
+    * if there is none.
+    *
+    * @param arr Array holding the token.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    *
+    * @return String equal to the token.
+    */
+   public String intern(char[] arr, int off, int len) {
+      if (len > maxLength) {
+         return new String(arr, off, len);
+      }
+
+      int h = 0;
+
+      for (int i = off; i < off + len; i ++) {
+         h = 31 * h + arr[i];
+      }
+
+      int    k = slot(h);
+      String s = slots.get(k);
+
+      if ((s == null) || ! equals(s, h, arr, off, len)) {
+         s = slots.get(k ^ 1);
+
+         if ((s == null) || ! equals(s, h, arr, off, len)) {
+            return add(k, new String(arr, off, len));
+         }
+      }
+
+      hits.increment();
+
+      return s;
+   }
+
+   /**
+    * Get the pooled string equal to part of a Latin-1 byte array, pooling a
+    * new one if there is none.
+    *
+    * @param arr Array holding the token, one Latin-1 character per byte.
+    * @param off Index of first byte.
+    * @param len Number of bytes.
+    *
+    * @return String equal to the token.
+    */
+   public String intern(byte[] arr, int off, int len) {
+      if (len > maxLength) {
+         return Latin1.decode(arr, off, len);
+      }
+
+      int h = 0;
+
+      for (int i = off; i < off + len; i ++) {
+         h = 31 * h + (arr[i] & 0xFF);
+      }
+
+      int    k = slot(h);
+      String s = slots.get(k);
+
+      if ((s == null) || ! equals(s, h, arr, off, len)) {
+         s = slots.get(k ^ 1);
+
+         if ((s == null) || ! equals(s, h, arr, off, len)) {
+            return add(k, Latin1.decode(arr, off, len));
+         }
+      }
+
+      hits.increment();
+
+      return s;
+   }
+
+   /**
+    * Get the pooled string equal to part of a sequence, pooling a new one
+    * if there is none.
+    *
+    * @param cs    Sequence holding the token.
+    * @param start Index of first character.
+    * @param end   Index after last character.
+    *
+    * @return String equal to the token.
+    */
+   public String intern(CharSequence cs, int start, int end) {
+      if (end - start > maxLength) {
+         return cs.subSequence(start, end).toString();
+      }
+
+      int h = 0;
+
+      for (int i = start; i < end; i ++) {
+         h = 31 * h + cs.charAt(i);
+      }
+
+      int    k = slot(h);
+      String s = slots.get(k);
+
+      if ((s == null) || ! equals(s, h, cs, start, end)) {
+         s = slots.get(k ^ 1);
+
+         if ((s == null) || ! equals(s, h, cs, start, end)) {
+            return add(k, cs.subSequence(start, end).toString());
+         }
+      }
+
+      hits.increment();
+
+      return s;
+   }
+
+   /**
+    * Get the pooled string equal to a string, pooling it if there is none.
+    *
+    * @param str String to look up; may be null.
+    *
+    * @return String equal to str; null if str is null.
+    */
+   public String intern(String str) {
+      return (str == null) ? null : intern(str, 0, str.length());
+   }
+
+   /**
+    * Get the first of a token's two slots.
+    *
+    * @param h Hash code, as String.hashCode().
+    *
+    * @return Even slot index.
+    */
+   private int slot(int h) {
+      return ((h ^ (h >>> 16)) << 1) & mask;
+   }
+
+   /**
+    * Put a new string in one of its two slots: an empty one if there is
+    * one, or else the one its hash picks.
+    *
+    * @param k Token's first slot.
+    * @param s String to pool.
+    *
+    * @return s.
+    */
+   private String add(int k, String s) {
+      misses.increment();
+
+      if ((slots.get(k) == null) && slots.compareAndSet(k, null, s)) {
+         return s;
+      }
+
+      if ((slots.get(k ^ 1) == null) && slots.compareAndSet(k ^ 1, null, s)) {
+         return s;
+      }
+
+      int victim = k | ((s.hashCode() >>> 20) & 1);
+
+      if (slots.getAndSet(victim, s) != null) {
+         evictions.increment();
+      }
+
+      return s;
+   }
+
+   // -------------------------------------------------------------------------
+   // comparison
+   // -------------------------------------------------------------------------
+
+   private static boolean equals(String s, int h, char[] arr, int off,
+         int len) {
+      if ((s.length() != len) || (s.hashCode() != h)) {
+         return false;
+      }
+
+      for (int i = 0; i < len; i ++) {
+         if (s.charAt(i) != arr[off + i]) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   private static boolean equals(String s, int h, byte[] arr, int off,
+         int len) {
+      if ((s.length() != len) || (s.hashCode() != h)) {
+         return false;
+      }
+
+      for (int i = 0; i < len; i ++) {
+         if (s.charAt(i) != (arr[off + i] & 0xFF)) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   private static boolean equals(String s, int h, CharSequence cs,
+         int start, int end) {
+      if ((s.length() != end - start) || (s.hashCode() != h)) {
+         return false;
+      }
+
+      for (int i = start; i < end; i ++) {
+         if (s.charAt(i - start) != cs.charAt(i)) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   // -------------------------------------------------------------------------
+   // TokenPoolMBean
+   // -------------------------------------------------------------------------
+
+   public long getHitCount() {
+      return hits.sum();
+   }
+
+   public long getMissCount() {
+      return misses.sum();
+   }
+
+   public long getEvictionCount() {
+      return evictions.sum();
+   }
+
+   public double getHitRate() {
+      long h = hits.sum();
+      long total = h + misses.sum();
+
+      return (total == 0) ? 0 : (double) h / total;
+   }
+
+   public int getSize() {
+      int n = 0;
+
+      for (int k = 0; k <= mask; k ++) {
+         if (slots.get(k) != null) {
+            n ++;
+         }
+      }
+
+      return n;
+   }
+
+   public int getMaxSize() {
+      return mask + 1;
+   }
+
+   public int getMaxLength() {
+      return maxLength;
+   }
+
+   public void reset() {
+      hits.reset();
+      misses.reset();
+      evictions.reset();
+   }
+
+   public void clear() {
+      for (int k = 0; k <= mask; k ++) {
+         slots.set(k, null);
+      }
+   }
+}
@@ -0,0 +1,69 @@
+// package org.javacogs;
+
+/**
+ * TokenPoolMBean is the management interface through which token pool
+ * statistics are published.
+ *
+ * @see TokenPool
+ */
+public interface TokenPoolMBean {
+   /**
+    * Get the number of lookups that found a pooled string.
+    *
+    * @return Hit count.
+    */
+   public long getHitCount();
+
+   /**
+    * Get the number of lookups that had to make and pool a string. Tokens
+    * too long to pool are not counted.
+    *
+    * @return Miss count.
+    */
+   public long getMissCount();
+
+   /**
+    * Get the number of pooled strings replaced by newer ones.
+    *
+    * @return Eviction count.
+    */
+   public long getEvictionCount();
+
+   /**
+    * Get the fraction of lookups that found a pooled string.
+    *
+    * @return Hit rate, 0-1; 0 if there have been no lookups.
+    */
+   public double getHitRate();
+
+   /**
+    * Get the number of strings in the pool.
+    *
+    * @return Current size.
+    */
+   public int getSize();
+
+   /**
+    * Get the number of strings the pool can hold.
+    *
+    * @return Maximum size.
+    */
+   public int getMaxSize();
+
+   /**
+    * Get the length of the longest token the pool will hold.
+    *
+    * @return Maximum token length.
+    */
+   public int getMaxLength();
+
+   /**
+    * Reset the counters.
+    */
+   public void reset();
+
+   /**
+    * Remove every string from the pool.
+    */
+   public void clear();
+}
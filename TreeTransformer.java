@@ -0,0 +1,305 @@
+// package org.javacogs;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+/**
+ * TreeTransformer applies a CharTransform to every regular file under a
+ * directory, in parallel on a work-stealing pool with one thread per core.
+ * Each file is streamed through a small buffer, written to a temporary file
+ * in the destination directory, and then renamed over the destination, so
+ * a reader never sees a half-written file. The new file keeps the source
+ * file's POSIX permissions.
+ * <br><br>
+ * The destination tree may be the source tree, in which case files are
+ * transformed in place. Bytes are read as Latin-1, as by FileTransformer.
+ * <br><br>
+ * Usage:
+ * <blockquote>
+ * java TreeTransformer <i>transform</i> <i>srcDir</i> [<i>dstDir</i>]
+ * </blockquote>
+ *
+ * @see FileTransformer
+ */
+public final class TreeTransformer {
+   private static final int BUFFER_SIZE = 64 * 1024;
+
+   /**
+    * Private constructor, so class cannot be instantiated.
+    */
+   private TreeTransformer() {
+   }
+
+   /**
+    * Transform every file under a directory, on one thread per core.
+    *
+    * @param src Directory to read.
+    * @param dst Directory to write; may be the same as src.
+    * @param t   Transform to apply.
+    *
+    * @return Report of the work done.
+    *
+    * @throws IOException if the source tree cannot be walked.
+    */
+   public static Report transform(Path src, Path dst, CharTransform t)
+         throws IOException {
+      return transform(src, dst, t, Runtime.getRuntime().availableProcessors());
+   }
+
+   /**
+    * Transform every file under a directory.
+    *
+    * @param src         Directory to read.
+    * @param dst         Directory to write; may be the same as src.
+    * @param t           Transform to apply.
+    * @param parallelism Number of threads.
+    *
+    * @return Report of the work done.
+    *
+    * @throws IOException if the source tree cannot be walked.
+    */
+   public static Report transform(final Path src, final Path dst,
+         final CharTransform t, int parallelism) throws IOException {
+      final List<Path> files;
+
+      try (Stream<Path> walk = Files.walk(src)) {
+         files = walk.filter(p -> Files.isRegularFile(p))
+            .collect(Collectors.toList());
+      }
+
+      final long[]          nanos = new long[files.size()];
+      final long[]          sizes = new long[files.size()];
+      final Queue<String>   errors = new ConcurrentLinkedQueue<String>();
+      final Semaphore       slots = new Semaphore(parallelism * 4);
+      ForkJoinPool          pool = new ForkJoinPool(parallelism);
+      List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+      long                  start = System.nanoTime();
+
+      try {
+         for (int i = 0; i < files.size(); i ++) {
+            final int  n = i;
+            final Path in = files.get(i);
+
+            // Keep only a few files per thread queued, so that a huge tree
+            // does not fill the pool's queues with tasks.
+            slots.acquireUninterruptibly();
+            tasks.add(pool.submit(() -> {
+               long t0 = System.nanoTime();
+
+               try {
+                  sizes[n] = transformFile(in,
+                     dst.resolve(src.relativize(in)), t);
+               } catch(IOException | RuntimeException ex) {
+                  // A bad file or transform fails that file, not the run.
+                  errors.add(in + ": " + ex);
+               } finally {
+                  slots.release();
+               }
+
+               nanos[n] = System.nanoTime() - t0;
+            }));
+         }
+
+         for (ForkJoinTask<?> task : tasks) {
+            task.join();
+         }
+      } finally {
+         pool.shutdown();
+      }
+
+      return new Report(sizes, nanos, System.nanoTime() - start,
+         new ArrayList<String>(errors));
+   }
+
+   /**
+    * Transform one file through a temporary file in the destination
+    * directory.
+    *
+    * @param in  File to read.
+    * @param out File to replace.
+    * @param t   Transform to apply.
+    *
+    * @return Number of bytes transformed.
+    *
+    * @throws IOException if reading or writing fails.
+    */
+   public static long transformFile(Path in, Path out, CharTransform t)
+         throws IOException {
+      Path dir = out.toAbsolutePath().getParent();
+      long total = 0;
+
+      Files.createDirectories(dir);
+
+      Path tmp = Files.createTempFile(dir, ".", ".tmp");
+
+      try {
+         try (InputStream is = Files.newInputStream(in);
+               OutputStream os = Files.newOutputStream(tmp)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int    n;
+
+            while ((n = is.read(buf)) > -1) {
+               t.apply(buf, 0, n);
+               os.write(buf, 0, n);
+               total += n;
+            }
+         }
+
+         copyPermissions(in, tmp);
+         Files.move(tmp, out, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+         tmp = null;
+      } finally {
+         if (tmp != null) {
+            Files.deleteIfExists(tmp);
+         }
+      }
+
+      return total;
+   }
+
+   /**
+    * Give a file the POSIX permissions of another, since a temporary file
+    * is created readable only by its owner. Does nothing on file systems
+    * without POSIX permissions.
+    *
+    * @param from File whose permissions to copy.
+    * @param to   File to change.
+    *
+    * @throws IOException if the permissions cannot be read or set.
+    */
+   private static void copyPermissions(Path from, Path to)
+         throws IOException {
+      PosixFileAttributeView src =
+         Files.getFileAttributeView(from, PosixFileAttributeView.class);
+      PosixFileAttributeView dst =
+         Files.getFileAttributeView(to, PosixFileAttributeView.class);
+
+      if ((src != null) && (dst != null)) {
+         dst.setPermissions(src.readAttributes().permissions());
+      }
+   }
+
+   /**
+    * Report summarizes a tree transform: throughput, per-file latency, and
+    * failures.
+    */
+   public static final class Report {
+      private final int          files;
+      private final long         bytes;
+      private final long         elapsed;
+      private final long[]       latencies;   // Sorted.
+      private final List<String> errors;
+
+      Report(long[] sizes, long[] nanos, long elapsed, List<String> errors) {
+         long total = 0;
+
+         for (int i = 0; i < sizes.length; i ++) {
+            total += sizes[i];
+         }
+
+         this.files = sizes.length;
+         this.bytes = total;
+         this.elapsed = elapsed;
+         this.latencies = nanos.clone();
+         this.errors = Collections.unmodifiableList(errors);
+
+         Arrays.sort(latencies);
+      }
+
+      /**
+       * Get the number of files processed, including failures.
+       *
+       * @return Number of files.
+       */
+      public int getFiles() {
+         return files;
+      }
+
+      /**
+       * Get the number of bytes transformed.
+       *
+       * @return Number of bytes.
+       */
+      public long getBytes() {
+         return bytes;
+      }
+
+      /**
+       * Get the elapsed time of the whole transform.
+       *
+       * @return Elapsed time in nanoseconds.
+       */
+      public long getElapsedNanos() {
+         return elapsed;
+      }
+
+      /**
+       * Get a percentile of the per-file latency.
+       *
+       * @param p Percentile, 0-100.
+       *
+       * @return Latency in nanoseconds; 0 if there were no files.
+       */
+      public long getLatencyNanos(double p) {
+         if (latencies.length == 0) {
+            return 0;
+         }
+
+         int i = (int) Math.ceil(p / 100 * latencies.length) - 1;
+
+         return latencies[Math.max(0, Math.min(i, latencies.length - 1))];
+      }
+
+      /**
+       * Get the failures, one message per file.
+       *
+       * @return Failure messages.
+       */
+      public List<String> getErrors() {
+         return errors;
+      }
+
+      public String toString() {
+         double secs = elapsed / 1e9;
+
+         return files + " files, " + bytes + " bytes in " + secs + " s: " +
+            (long) (files / secs) + " files/s, " +
+            (long) (bytes / secs / (1 << 20)) + " MB/s; latency p50 " +
+            ms(getLatencyNanos(50)) + " ms, p99 " + ms(getLatencyNanos(99)) +
+            " ms, max " + ms(getLatencyNanos(100)) + " ms; " +
+            errors.size() + " failed";
+      }
+
+      private static String ms(long nanos) {
+         return String.valueOf(nanos / 1000 / 1000.0);
+      }
+   }
+
+   /**
+    * Transform a directory tree from the command line.
+    *
+    * @param args Transform name, source directory, optional destination
+    *             directory.
+    */
+   public static void main(String[] args) throws IOException {
+      if ((args.length < 2) || (args.length > 3)) {
+         System.err.println("usage: TreeTransformer transform src [dst]");
+         System.exit(2);
+      }
+
+      Path   src = Paths.get(args[1]);
+      Path   dst = (args.length > 2) ? Paths.get(args[2]) : src;
+      Report report = transform(src, dst, CharTransform.forName(args[0]));
+
+      for (String error : report.getErrors()) {
+         System.err.println(error);
+      }
+
+      System.out.println(report);
+   }
+}
@@ -0,0 +1,343 @@
+// package org.javacogs;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * UnicodeRotation rotates letters and digits within their own script
+ * alphabets: Latin, Greek, Cyrillic, fullwidth Latin, and the decimal digits
+ * of every script in the Basic Multilingual Plane. Unlike
+ * StrUtil.rotAscii(char, int), a character never leaves its alphabet, and
+ * characters outside the known alphabets (including surrogate pairs) are left
+ * unchanged.
+ * <br><br>
+ * The alphabets are held in a small table of character ranges, searched by
+ * binary search. ASCII characters are looked up in a 128-entry table first,
+ * so ASCII text costs the same as the table-driven ASCII rotations.
+ * <br><br>
+ * HALF rotates each alphabet by half its size, so, like ROT13, it is its own
+ * inverse: it is ROT13N5 extended to the other scripts.
+ */
+public final class UnicodeRotation {
+   private static final int ASCII = 128;
+
+   // Range table, sorted by first character. Range i covers lo[i] to hi[i]
+   // and belongs to alphabet cls[i], where lo[i] is letter base[i] of the
+   // alphabet.
+   private static final char[] lo;
+   private static final char[] hi;
+   private static final int[]  cls;
+   private static final int[]  base;
+
+   // Letters of each alphabet.
+   private static final char[][] alphabets;
+
+   static {
+      // Alphabets as lists of inclusive ranges. Greek skips the reserved
+      // U+03A2 and the final sigma, so each Greek alphabet has 24 letters.
+      char[][] letters = {
+         { 'A', 'Z' },
+         { 'a', 'z' },
+         { '\u0391', '\u03A1', '\u03A3', '\u03A9' },
+         { '\u03B1', '\u03C1', '\u03C3', '\u03C9' },
+         { '\u0410', '\u042F' },
+         { '\u0430', '\u044F' },
+         { '\uFF21', '\uFF3A' },
+         { '\uFF41', '\uFF5A' }
+      };
+
+      // Every run of ten decimal digits that starts at a zero.
+      char[] digits = new char[256];
+      int    nDigits = 0;
+
+      for (int c = 0; c < 0x10000; c ++) {
+         if ((Character.getType((char) c) == Character.DECIMAL_DIGIT_NUMBER)
+               && (Character.digit((char) c, 10) == 0)
+               && (Character.digit((char) (c + 9), 10) == 9)) {
+            if (nDigits == digits.length) {
+               char[] more = new char[digits.length * 2];
+               System.arraycopy(digits, 0, more, 0, nDigits);
+               digits = more;
+            }
+
+            digits[nDigits ++] = (char) c;
+         }
+      }
+
+      int nAlphabets = letters.length + nDigits;
+      int nRanges = nDigits;
+
+      for (int i = 0; i < letters.length; i ++) {
+         nRanges += letters[i].length / 2;
+      }
+
+      alphabets = new char[nAlphabets][];
+      lo = new char[nRanges];
+      hi = new char[nRanges];
+      cls = new int[nRanges];
+      base = new int[nRanges];
+
+      int r = 0;
+
+      for (int a = 0; a < nAlphabets; a ++) {
+         char[] ranges = (a < letters.length) ? letters[a] :
+            new char[] {
+               digits[a - letters.length],
+               (char) (digits[a - letters.length] + 9) };
+         StringBuffer sb = new StringBuffer();
+
+         for (int i = 0; i < ranges.length; i += 2) {
+            lo[r] = ranges[i];
+            hi[r] = ranges[i + 1];
+            cls[r] = a;
+            base[r] = sb.length();
+            r ++;
+
+            for (char c = ranges[i]; c <= ranges[i + 1]; c ++) {
+               sb.append(c);
+            }
+         }
+
+         alphabets[a] = sb.toString().toCharArray();
+      }
+
+      sortRanges();
+   }
+
+   /**
+    * Rotation by half of each alphabet: 13 for Latin, 5 for digits, 12 for
+    * Greek, 16 for Cyrillic.
+    */
+   public static final UnicodeRotation HALF = new UnicodeRotation(0, true);
+
+   /**
+    * Rotation lengths that give the same rotation: the least common
+    * multiple of the alphabet sizes.
+    */
+   private static final int PERIOD = period();
+
+   // Rotations made by of(), by rotation length modulo PERIOD.
+   private static final AtomicReferenceArray<UnicodeRotation> cache =
+      new AtomicReferenceArray<UnicodeRotation>(PERIOD);
+
+   private final char[] ascii = new char[ASCII];
+   private final int[]  shifts;
+
+   /**
+    * Private constructor; use of() or HALF.
+    *
+    * @param n    Rotation length.
+    * @param half True to rotate each alphabet by half its size instead.
+    */
+   private UnicodeRotation(int n, boolean half) {
+      shifts = new int[alphabets.length];
+
+      for (int a = 0; a < alphabets.length; a ++) {
+         int size = alphabets[a].length;
+
+         shifts[a] = half ? size / 2 : ((n % size) + size) % size;
+      }
+
+      for (int c = 0; c < ASCII; c ++) {
+         ascii[c] = slow((char) c);
+      }
+   }
+
+   /**
+    * Get a rotation that moves each letter or digit forward by the given
+    * amount within its alphabet. Rotations are cached, so asking for the
+    * same length again costs no setup.
+    *
+    * @param n Rotation length. May be negative.
+    *
+    * @return Rotation.
+    */
+   public static UnicodeRotation of(int n) {
+      int             k = Math.floorMod(n, PERIOD);
+      UnicodeRotation r = cache.get(k);
+
+      // Rotations are immutable, so a race only builds one twice.
+      if (r == null) {
+         r = new UnicodeRotation(k, false);
+         cache.set(k, r);
+      }
+
+      return r;
+   }
+
+   /**
+    * Get the least common multiple of the alphabet sizes.
+    *
+    * @return Period of the rotation lengths.
+    */
+   private static int period() {
+      int p = 1;
+
+      for (int a = 0; a < alphabets.length; a ++) {
+         int size = alphabets[a].length;
+         int x = p;
+         int y = size;
+
+         while (y != 0) {
+            int t = x % y;
+
+            x = y;
+            y = t;
+         }
+
+         p = p / x * size;
+      }
+
+      return p;
+   }
+
+   /**
+    * Get the rotation that undoes this one.
+    *
+    * @return Inverse rotation.
+    */
+   public UnicodeRotation inverse() {
+      UnicodeRotation inv = new UnicodeRotation(0, false);
+
+      for (int a = 0; a < shifts.length; a ++) {
+         inv.shifts[a] = (alphabets[a].length - shifts[a]) %
+            alphabets[a].length;
+      }
+
+      for (int c = 0; c < ASCII; c ++) {
+         inv.ascii[c] = inv.slow((char) c);
+      }
+
+      return inv;
+   }
+
+   // -------------------------------------------------------------------------
+   // apply
+   // -------------------------------------------------------------------------
+
+   /**
+    * Rotate the given character. Surrogates are returned unchanged.
+    *
+    * @param c Character to rotate.
+    *
+    * @return Rotated character.
+    */
+   public char apply(char c) {
+      return (c < ASCII) ? ascii[c] : slow(c);
+   }
+
+   /**
+    * Rotate the given string.
+    *
+    * @param str String to rotate.
+    *
+    * @return Rotated string. Empty string if str is null.
+    */
+   public String apply(String str) {
+      if (str == null) {
+         return "";
+      }
+
+      char[] arr = str.toCharArray();
+
+      apply(arr, 0, arr.length);
+
+      return new String(arr);
+   }
+
+   /**
+    * Rotate the given buffer.
+    *
+    * @param sb Buffer to rotate.
+    *
+    * @return Reference to modified buffer.
+    */
+   public StringBuffer apply(StringBuffer sb) {
+      char[] arr = new char[sb.length()];
+
+      sb.getChars(0, arr.length, arr, 0);
+      apply(arr, 0, arr.length);
+      sb.setLength(0);
+      sb.append(arr);
+
+      return sb;
+   }
+
+   /**
+    * Rotate part of a character array in place.
+    *
+    * @param arr Array to rotate.
+    * @param off Index of first character.
+    * @param len Number of characters.
+    */
+   public void apply(char[] arr, int off, int len) {
+      char[] t = ascii;
+      int    end = off + len;
+
+      for (int i = off; i < end; i ++) {
+         char c = arr[i];
+
+         arr[i] = (c < ASCII) ? t[c] : slow(c);
+      }
+   }
+
+   /**
+    * Rotate a character by looking it up in the range table.
+    *
+    * @param c Character to rotate.
+    *
+    * @return Rotated character. The same character if it is not in a known
+    *         alphabet.
+    */
+   private char slow(char c) {
+      // No alphabet includes surrogates, so pairs are never split.
+      int l = 0;
+      int h = lo.length - 1;
+
+      while (l <= h) {
+         int m = (l + h) >>> 1;
+
+         if (c < lo[m]) {
+            h = m - 1;
+         } else if (c > hi[m]) {
+            l = m + 1;
+         } else {
+            char[] alphabet = alphabets[cls[m]];
+            int    i = base[m] + (c - lo[m]) + shifts[cls[m]];
+
+            return alphabet[(i < alphabet.length) ? i : i - alphabet.length];
+         }
+      }
+
+      return c;
+   }
+
+   /**
+    * Sort the range table by first character (insertion sort; the table is
+    * small and nearly sorted).
+    */
+   private static void sortRanges() {
+      for (int i = 1; i < lo.length; i ++) {
+         for (int j = i; (j > 0) && (lo[j - 1] > lo[j]); j --) {
+            swap(j - 1, j);
+         }
+      }
+   }
+
+   private static void swap(int i, int j) {
+      char c = lo[i];
+      lo[i] = lo[j];
+      lo[j] = c;
+
+      c = hi[i];
+      hi[i] = hi[j];
+      hi[j] = c;
+
+      int n = cls[i];
+      cls[i] = cls[j];
+      cls[j] = n;
+
+      n = base[i];
+      base[i] = base[j];
+      base[j] = n;
+   }
+}
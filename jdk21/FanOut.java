@@ -0,0 +1,181 @@
+// package org.javacogs;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * FanOut runs a batch of small, independent tasks, such as StrUtil
+ * transforms mixed with I/O, on one virtual thread each, and collects their
+ * results in input order.
+ * <br><br>
+ * A batch is scoped the way structured concurrency scopes its subtasks: no
+ * task outlives the call that started it. If any task fails, the others are
+ * cancelled by interruption and the failure is thrown; if the batch is not
+ * done by its deadline, every task is cancelled and TimeoutException is
+ * thrown. Either way the call returns only after every task has finished.
+ * <br><br>
+ * Virtual threads are cheap enough to start one per task, but a buffer kept
+ * in a ThreadLocal would be allocated once per task as well, so the
+ * transforms take their scratch space from ScratchPool.SHARED instead.
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * List&lt;String&gt; rotated = FanOut.map(fields, StrUtil::rot13, 100,
+ * TimeUnit.MILLISECONDS)
+ * </blockquote>
+ * This class needs virtual threads, which are in JDK 21 and later, so it is
+ * kept in its own source directory, jdk21, and the rest of the library
+ * builds without it on older JDKs. Build it after the other classes, with
+ * them on the class path:
+ * <blockquote>
+ * javac --release 21 -cp <i>classes</i> -d <i>classes</i> jdk21/FanOut.java
+ * </blockquote>
+ *
+ * @see ScratchPool
+ */
+public final class FanOut {
+   /**
+    * Private constructor, so class cannot be instantiated.
+    */
+   private FanOut() {
+   }
+
+   /**
+    * Run tasks, one virtual thread each, and wait for all of them.
+    *
+    * @param tasks   Tasks to run.
+    * @param timeout Longest time to wait for the whole batch.
+    * @param unit    Unit of timeout.
+    *
+    * @return Results, in the same order as tasks.
+    *
+    * @throws ExecutionException if a task throws an exception; it is the
+    *         cause. The other tasks are cancelled.
+    * @throws TimeoutException if the batch is not done within timeout. All
+    *         tasks are cancelled.
+    * @throws InterruptedException if the calling thread is interrupted. All
+    *         tasks are cancelled.
+    */
+   public static <V> List<V> invokeAll(
+         List<? extends Callable<? extends V>> tasks, long timeout,
+         TimeUnit unit)
+         throws ExecutionException, TimeoutException, InterruptedException {
+      int                        n = tasks.size();
+      Object[]                   results = new Object[n];
+      CountDownLatch             done = new CountDownLatch(n);
+      AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+      try (ExecutorService pool =
+               Executors.newVirtualThreadPerTaskExecutor()) {
+         for (int i = 0; i < n; i ++) {
+            final int                   k = i;
+            final Callable<? extends V> task = tasks.get(i);
+
+            pool.execute(() -> {
+               try {
+                  results[k] = task.call();
+               } catch(Throwable ex) {
+                  if (failure.compareAndSet(null, ex)) {
+                     // Release the caller at once.
+                     while (done.getCount() > 0) {
+                        done.countDown();
+                     }
+                  }
+               } finally {
+                  done.countDown();
+               }
+            });
+         }
+
+         try {
+            if (! done.await(timeout, unit)) {
+               pool.shutdownNow();
+
+               throw new TimeoutException("batch of " + n +
+                  " tasks not done in " + timeout + " " + unit);
+            }
+         } catch(InterruptedException ex) {
+            pool.shutdownNow();
+
+            throw ex;
+         }
+
+         Throwable cause = failure.get();
+
+         if (cause != null) {
+            pool.shutdownNow();
+
+            throw new ExecutionException(cause);
+         }
+      }
+
+      @SuppressWarnings("unchecked")
+      List<V> list = (List<V>) Arrays.asList(results);
+
+      return list;
+   }
+
+   /**
+    * Apply a function to each input, one virtual thread each, and wait for
+    * all of them.
+    *
+    * @param inputs  Inputs.
+    * @param f       Function to apply.
+    * @param timeout Longest time to wait for the whole batch.
+    * @param unit    Unit of timeout.
+    *
+    * @return Results, in the same order as inputs.
+    *
+    * @throws ExecutionException if f throws an exception; it is the cause.
+    *         The other tasks are cancelled.
+    * @throws TimeoutException if the batch is not done within timeout. All
+    *         tasks are cancelled.
+    * @throws InterruptedException if the calling thread is interrupted. All
+    *         tasks are cancelled.
+    */
+   public static <T, V> List<V> map(List<? extends T> inputs,
+         Function<? super T, ? extends V> f, long timeout, TimeUnit unit)
+         throws ExecutionException, TimeoutException, InterruptedException {
+      List<Callable<V>> tasks = new ArrayList<Callable<V>>(inputs.size());
+
+      for (T input : inputs) {
+         tasks.add(() -> f.apply(input));
+      }
+
+      return invokeAll(tasks, timeout, unit);
+   }
+
+   /**
+    * Transform each string, one virtual thread each, and wait for all of
+    * them.
+    *
+    * @param strs    Strings to transform. Null elements become empty
+    *                strings.
+    * @param t       Transform to apply.
+    * @param timeout Longest time to wait for the whole batch.
+    * @param unit    Unit of timeout.
+    *
+    * @return Transformed strings, in the same order as strs.
+    *
+    * @throws TimeoutException if the batch is not done within timeout.
+    * @throws InterruptedException if the calling thread is interrupted.
+    */
+   public static List<String> transform(List<String> strs, CharTransform t,
+         long timeout, TimeUnit unit)
+         throws TimeoutException, InterruptedException {
+      try {
+         return map(strs, (String s) -> t.apply(s), timeout, unit);
+      } catch(ExecutionException ex) {
+         // CharTransform.apply(String) throws only unchecked exceptions.
+         Throwable cause = ex.getCause();
+
+         if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+
+         throw (RuntimeException) cause;
+      }
+   }
+}
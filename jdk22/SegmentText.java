@@ -0,0 +1,460 @@
+// package org.javacogs;
+
+import java.io.*;
+import java.lang.foreign.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/**
+ * SegmentText provides the rotations, hex codec, search, and count on text
+ * held off the Java heap in a MemorySegment, either allocated from an Arena
+ * or mapped from a file. Segments may be larger than 2GB, so offsets are
+ * longs; no String or StringBuffer is made from the text.
+ * <br><br>
+ * The text is Latin-1 or UTF-8 bytes. Transforms that change only ASCII
+ * characters, such as ROT13, and searches for whole characters work the
+ * same on either, because the bytes of a multi-byte UTF-8 character are all
+ * above 0x7F and no UTF-8 character is a part of another. rotAscii() and
+ * the hex codec work on Latin-1 only.
+ * <br><br>
+ * The segment is processed in chunks, each copied to a heap array, worked
+ * on in a plain array loop, and copied back if it changed. The JIT can
+ * hoist the bounds checks out of such loops, which it can't always do for
+ * per-byte segment accesses.
+ * <br><br>
+ * Example:
+ * <blockquote>
+ * try (Arena arena = Arena.ofConfined()) {<br>
+ * &nbsp;&nbsp;&nbsp;MemorySegment seg = arena.allocate(size);<br>
+ * &nbsp;&nbsp;&nbsp;...<br>
+ * &nbsp;&nbsp;&nbsp;SegmentText.rot13(seg, StandardCharsets.UTF_8);<br>
+ * }
+ * </blockquote>
+ * This class needs the final java.lang.foreign API of JDK 22 or later, so
+ * it is kept in its own source directory, jdk22, and the rest of the
+ * library builds without it on older JDKs. Build it after the other
+ * classes, with them on the class path:
+ * <blockquote>
+ * javac --release 22 -cp <i>classes</i> -d <i>classes</i>
+ * jdk22/SegmentText.java
+ * </blockquote>
+ *
+ * @see Latin1
+ * @see CharTransform
+ */
+public final class SegmentText {
+   /**
+    * Number of bytes copied to the heap at a time.
+    */
+   private static final int CHUNK = 64 * 1024;
+
+   private static final ValueLayout.OfByte BYTE = ValueLayout.JAVA_BYTE;
+
+   /**
+    * Private constructor, so class cannot be instantiated.
+    */
+   private SegmentText() {
+   }
+
+   // -------------------------------------------------------------------------
+   // transform
+   // -------------------------------------------------------------------------
+
+   /**
+    * Transform a segment in place.
+    *
+    * @param seg Segment to transform.
+    * @param t   Transform to apply.
+    * @param cs  Encoding of the text; ISO-8859-1 or UTF-8.
+    *
+    * @throws IllegalArgumentException if cs is UTF-8 and t changes anything
+    *         but ASCII, or cs is not supported.
+    * @throws IllegalStateException if cs is ISO-8859-1 and t maps a Latin-1
+    *         character to a character above 255.
+    */
+   public static void transform(MemorySegment seg, CharTransform t,
+         Charset cs) {
+      if (utf8(cs) && (! t.isAsciiOnly())) {
+         throw new IllegalArgumentException(
+            "transform changes non-ASCII characters of UTF-8 text");
+      }
+
+      long   size = seg.byteSize();
+      byte[] buf = new byte[(int) Math.min(CHUNK, size)];
+
+      for (long pos = 0; pos < size; pos += CHUNK) {
+         int n = (int) Math.min(CHUNK, size - pos);
+
+         MemorySegment.copy(seg, BYTE, pos, buf, 0, n);
+         t.apply(buf, 0, n);
+         MemorySegment.copy(buf, 0, seg, BYTE, pos, n);
+      }
+   }
+
+   /**
+    * Transform a file in place through a mapping of it.
+    *
+    * @param path File to transform.
+    * @param t    Transform to apply.
+    * @param cs   Encoding of the text; ISO-8859-1 or UTF-8.
+    *
+    * @throws IOException if the file can't be mapped.
+    * @throws IllegalArgumentException if cs is UTF-8 and t changes anything
+    *         but ASCII, or cs is not supported.
+    */
+   public static void transform(Path path, CharTransform t, Charset cs)
+         throws IOException {
+      try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ,
+               StandardOpenOption.WRITE);
+            Arena arena = Arena.ofConfined()) {
+         transform(ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size(),
+            arena), t, cs);
+      }
+   }
+
+   /**
+    * Perform a rot13 transformation on a segment in place.
+    *
+    * @param seg Segment to transform.
+    * @param cs  Encoding of the text; ISO-8859-1 or UTF-8.
+    */
+   public static void rot13(MemorySegment seg, Charset cs) {
+      transform(seg, CharTransform.ROT13, cs);
+   }
+
+   /**
+    * Perform a rot13n5 transformation on a segment in place.
+    *
+    * @param seg Segment to transform.
+    * @param cs  Encoding of the text; ISO-8859-1 or UTF-8.
+    */
+   public static void rot13n5(MemorySegment seg, Charset cs) {
+      transform(seg, CharTransform.ROT13N5, cs);
+   }
+
+   /**
+    * Rotate each byte of a Latin-1 segment in place, wrapping within the
+    * byte range, as Latin1.rotAscii() does.
+    *
+    * @param seg  Segment to transform.
+    * @param rlen Rotation length.
+    */
+   public static void rotAscii(MemorySegment seg, int rlen) {
+      long   size = seg.byteSize();
+      byte[] buf = new byte[(int) Math.min(CHUNK, size)];
+
+      for (long pos = 0; pos < size; pos += CHUNK) {
+         int n = (int) Math.min(CHUNK, size - pos);
+
+         MemorySegment.copy(seg, BYTE, pos, buf, 0, n);
+         Latin1.rotAscii(buf, 0, n, rlen);
+         MemorySegment.copy(buf, 0, seg, BYTE, pos, n);
+      }
+   }
+
+   // -------------------------------------------------------------------------
+   // search
+   // -------------------------------------------------------------------------
+
+   /**
+    * Find the offset of a byte in a segment.
+    *
+    * @param seg    Segment to search.
+    * @param from   Offset at which to start search.
+    * @param target Byte to find.
+    *
+    * @return Offset of given byte. -1 if it is not found.
+    */
+   public static long indexOf(MemorySegment seg, long from, byte target) {
+      long   size = seg.byteSize();
+      byte[] buf = new byte[CHUNK];
+
+      for (long pos = Math.max(from, 0); pos < size; pos += CHUNK) {
+         int n = (int) Math.min(CHUNK, size - pos);
+
+         MemorySegment.copy(seg, BYTE, pos, buf, 0, n);
+
+         int i = Latin1.indexOf(buf, 0, n, target);
+
+         if (i >= 0) {
+            return pos + i;
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * Find the offset of a byte sequence in a segment.
+    *
+    * @param seg    Segment to search.
+    * @param from   Offset at which to start search.
+    * @param target Bytes to find.
+    *
+    * @return Offset of given bytes. -1 if they are not found or target is
+    *         empty.
+    */
+   public static long indexOf(MemorySegment seg, long from, byte[] target) {
+      int tl = target.length;
+
+      if (tl == 0) {
+         return -1;
+      }
+
+      // Chunks overlap by tl - 1 bytes, so every match lies wholly in the
+      // chunk in which it starts.
+      long   size = seg.byteSize();
+      byte[] buf = new byte[CHUNK + tl - 1];
+
+      for (long pos = Math.max(from, 0); pos + tl <= size; pos += CHUNK) {
+         int n = (int) Math.min(buf.length, size - pos);
+
+         MemorySegment.copy(seg, BYTE, pos, buf, 0, n);
+
+         int i = Latin1.indexOf(buf, 0, n, target);
+
+         if (i >= 0) {
+            return pos + i;
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * Find the offset of a string in a segment of encoded text.
+    *
+    * @param seg    Segment to search.
+    * @param from   Offset at which to start search.
+    * @param target String to find.
+    * @param cs     Encoding of the text; ISO-8859-1 or UTF-8.
+    *
+    * @return Byte offset of given string. -1 if it is not found or target
+    *         is empty.
+    *
+    * @throws IllegalArgumentException if cs is not supported.
+    */
+   public static long indexOf(MemorySegment seg, long from, String target,
+         Charset cs) {
+      byte[] b = encode(target, cs);
+
+      return (b == null) ? -1 : indexOf(seg, from, b);
+   }
+
+   // -------------------------------------------------------------------------
+   // count
+   // -------------------------------------------------------------------------
+
+   /**
+    * Count the occurrences of a byte in a segment.
+    *
+    * @param seg    Segment in which to count occurrences.
+    * @param target Byte to count.
+    *
+    * @return Number of occurrences.
+    */
+   public static long count(MemorySegment seg, byte target) {
+      long   size = seg.byteSize();
+      byte[] buf = new byte[(int) Math.min(CHUNK, size)];
+      long   count = 0;
+
+      for (long pos = 0; pos < size; pos += CHUNK) {
+         int n = (int) Math.min(CHUNK, size - pos);
+
+         MemorySegment.copy(seg, BYTE, pos, buf, 0, n);
+         count += Latin1.count(buf, 0, n, target);
+      }
+
+      return count;
+   }
+
+   /**
+    * Count the occurrences of a byte sequence in a segment. As with
+    * StrUtil.count(), occurrences may overlap.
+    *
+    * @param seg    Segment in which to count occurrences.
+    * @param target Bytes to count.
+    *
+    * @return Number of occurrences; 0 if target is empty.
+    */
+   public static long count(MemorySegment seg, byte[] target) {
+      int tl = target.length;
+
+      if (tl == 0) {
+         return 0;
+      }
+
+      long   size = seg.byteSize();
+      byte[] buf = new byte[CHUNK + tl - 1];
+      long   count = 0;
+
+      for (long pos = 0; pos + tl <= size; pos += CHUNK) {
+         int n = (int) Math.min(buf.length, size - pos);
+
+         MemorySegment.copy(seg, BYTE, pos, buf, 0, n);
+         count += Latin1.count(buf, 0, n, target);
+      }
+
+      return count;
+   }
+
+   /**
+    * Count the occurrences of a string in a segment of encoded text. As
+    * with StrUtil.count(), occurrences may overlap.
+    *
+    * @param seg    Segment in which to count occurrences.
+    * @param target String to count.
+    * @param cs     Encoding of the text; ISO-8859-1 or UTF-8.
+    *
+    * @return Number of occurrences; 0 if target is empty.
+    *
+    * @throws IllegalArgumentException if cs is not supported.
+    */
+   public static long count(MemorySegment seg, String target, Charset cs) {
+      byte[] b = encode(target, cs);
+
+      return (b == null) ? 0 : count(seg, b);
+   }
+
+   // -------------------------------------------------------------------------
+   // hex
+   // -------------------------------------------------------------------------
+
+   /**
+    * Get the length of the hex encoding of a Latin-1 segment.
+    *
+    * @param seg Segment to be encoded.
+    *
+    * @return Number of bytes hexEncode() will write.
+    */
+   public static long hexEncodedLength(MemorySegment seg) {
+      long   size = seg.byteSize();
+      byte[] buf = new byte[(int) Math.min(CHUNK, size)];
+      long   n = (size > 0) ? size - 1 : 0;    // Colons.
+
+      for (long pos = 0; pos < size; pos += CHUNK) {
+         int len = (int) Math.min(CHUNK, size - pos);
+
+         MemorySegment.copy(seg, BYTE, pos, buf, 0, len);
+         n += Latin1.hexEncodedLength(buf, 0, len) - (len - 1);
+      }
+
+      return n;
+   }
+
+   /**
+    * Encode a Latin-1 segment as a series of hexadecimal values delimited
+    * with colons, as StrUtil.hexEncode() does, writing ASCII to another
+    * segment.
+    *
+    * @param src    Segment to be encoded.
+    * @param dst    Segment to receive the encoding; see hexEncodedLength().
+    * @param dstOff Offset in dst at which to start.
+    *
+    * @return Offset in dst after the last byte written.
+    *
+    * @throws IndexOutOfBoundsException if dst is too small.
+    */
+   public static long hexEncode(MemorySegment src, MemorySegment dst,
+         long dstOff) {
+      long   size = src.byteSize();
+      byte[] in = new byte[(int) Math.min(CHUNK, size)];
+      byte[] out = new byte[in.length * 3];
+      long   j = dstOff;
+
+      for (long pos = 0; pos < size; pos += CHUNK) {
+         int n = (int) Math.min(CHUNK, size - pos);
+         int k = 0;
+
+         MemorySegment.copy(src, BYTE, pos, in, 0, n);
+
+         if (pos > 0) {
+            out[k ++] = ':';
+         }
+
+         k = Latin1.hexEncode(in, 0, n, out, k);
+         MemorySegment.copy(out, 0, dst, BYTE, j, k);
+         j += k;
+      }
+
+      return j;
+   }
+
+   /**
+    * Decode a segment that contains a series of hexadecimal values
+    * delimited with colons, as StrUtil.hexDecode() does, writing Latin-1 to
+    * another segment. Values above 0xFF are written as '?'. The result is
+    * never longer than the input, so the destination may be the source
+    * segment if dstOff is 0.
+    *
+    * @param src    Segment to be decoded.
+    * @param dst    Segment to receive decoded bytes.
+    * @param dstOff Offset in dst at which to start.
+    *
+    * @return Offset in dst after the last byte written.
+    *
+    * @throws IndexOutOfBoundsException if dst is too small.
+    */
+   public static long hexDecode(MemorySegment src, MemorySegment dst,
+         long dstOff) {
+      HexDecoder decoder = new HexDecoder();
+      long       size = src.byteSize();
+      byte[]     in = new byte[(int) Math.min(CHUNK, size)];
+      byte[]     out = new byte[in.length + 1];
+      long       j = dstOff;
+      int        c;
+
+      for (long pos = 0; pos <= size; pos += CHUNK) {
+         int n = (int) Math.min(CHUNK, size - pos);
+         int k = 0;
+
+         MemorySegment.copy(src, BYTE, pos, in, 0, n);
+
+         for (int i = 0; i < n; i ++) {
+            if ((c = decoder.accept(in[i] & 0xFF)) != HexDecoder.NONE) {
+               out[k ++] = (byte) ((c > 0xFF) ? '?' : c);
+            }
+         }
+
+         if ((pos + CHUNK > size) &&
+               ((c = decoder.finish()) != HexDecoder.NONE)) {
+            out[k ++] = (byte) ((c > 0xFF) ? '?' : c);
+         }
+
+         MemorySegment.copy(out, 0, dst, BYTE, j, k);
+         j += k;
+      }
+
+      return j;
+   }
+
+   // -------------------------------------------------------------------------
+   // encoding
+   // -------------------------------------------------------------------------
+
+   private static boolean utf8(Charset cs) {
+      if (StandardCharsets.UTF_8.equals(cs)) {
+         return true;
+      }
+
+      if (StandardCharsets.ISO_8859_1.equals(cs)) {
+         return false;
+      }
+
+      throw new IllegalArgumentException("unsupported encoding: " + cs);
+   }
+
+   /**
+    * Encode a search target.
+    *
+    * @param target String to encode.
+    * @param cs     Encoding; ISO-8859-1 or UTF-8.
+    *
+    * @return Encoded bytes; null if target can't occur in text in cs.
+    */
+   private static byte[] encode(String target, Charset cs) {
+      return utf8(cs) ? target.getBytes(StandardCharsets.UTF_8) :
+         Latin1.encode(target);
+   }
+}
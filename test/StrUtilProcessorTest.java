@@ -0,0 +1,226 @@
+// package org.javacogs;
+
+import java.nio.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * StrUtilProcessorTest checks the backpressure of StrUtilProcessor: a slow
+ * subscriber must hold the processor to one outstanding upstream request
+ * and keep it from reading ahead into its buffers, and a stream that
+ * completes before anyone subscribes must still deliver its final chunk and
+ * its completion.
+ * <br><br>
+ * Usage, with the library classes on the class path:
+ * <blockquote>
+ * javac -cp <i>classes</i> -d <i>classes</i> test/StrUtilProcessorTest.java
+ * <br>
+ * java -cp <i>classes</i> StrUtilProcessorTest
+ * </blockquote>
+ */
+public final class StrUtilProcessorTest {
+   private static final long TIMEOUT = 10;   // Seconds.
+
+   /**
+    * Private constructor, so class cannot be instantiated.
+    */
+   private StrUtilProcessorTest() {
+   }
+
+   /**
+    * Run the tests.
+    *
+    * @param args Not used.
+    *
+    * @throws Exception if a test fails.
+    */
+   public static void main(String[] args) throws Exception {
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+
+      try {
+         slowSubscriberBoundsUpstream(executor);
+         completionBeforeSubscribe(executor);
+      } finally {
+         executor.shutdownNow();
+      }
+
+      System.out.println("OK");
+   }
+
+   /**
+    * A subscriber that takes one chunk at a time, slowly, must never leave
+    * more than one chunk requested from upstream.
+    */
+   private static void slowSubscriberBoundsUpstream(Executor executor)
+         throws Exception {
+      CountingPublisher            upstream = new CountingPublisher(50);
+      StrUtilProcessor<CharBuffer> p = StrUtilProcessor.rot13(executor, 4);
+      Collector                    down = new Collector(5, upstream.sent);
+
+      upstream.subscribe(p);
+      p.subscribe(down);
+
+      check(down.done.await(TIMEOUT, TimeUnit.SECONDS), "stream finished");
+      check(down.error == null, "no error: " + down.error);
+      check(down.text().equals(StrUtil.rot13(upstream.text())),
+         "all chunks delivered in order");
+      check(upstream.maxOutstanding.get() == 1,
+         "upstream requests bounded to 1, was " +
+         upstream.maxOutstanding.get());
+      check(down.maxLag <= 2,
+         "processor ran " + down.maxLag + " chunks ahead of the subscriber");
+   }
+
+   /**
+    * A stream that completes before the processor has a subscriber must
+    * deliver its final chunk and completion once one subscribes.
+    */
+   private static void completionBeforeSubscribe(Executor executor)
+         throws Exception {
+      SubmissionPublisher<CharBuffer> upstream =
+         new SubmissionPublisher<CharBuffer>(executor, 4);
+      StrUtilProcessor<CharBuffer>    p =
+         StrUtilProcessor.hexDecode(executor, 4);
+      Collector                       down = new Collector(0, null);
+
+      upstream.subscribe(p);
+      upstream.submit(CharBuffer.wrap("41:4"));
+      upstream.submit(CharBuffer.wrap("2"));
+      upstream.close();
+
+      // Let the completion reach the processor before anyone subscribes.
+      Thread.sleep(200);
+      p.subscribe(down);
+
+      check(down.done.await(TIMEOUT, TimeUnit.SECONDS), "completion seen");
+      check(down.error == null, "no error: " + down.error);
+      check(down.text().equals("AB"), "got " + down.text());
+   }
+
+   private static void check(boolean ok, String what) {
+      if (! ok) {
+         throw new AssertionError(what);
+      }
+   }
+
+   // -------------------------------------------------------------------------
+   // test publisher and subscriber
+   // -------------------------------------------------------------------------
+
+   /**
+    * CountingPublisher emits one-character chunks on request and records
+    * the most requests outstanding at once.
+    */
+   private static final class CountingPublisher
+         implements Flow.Publisher<CharBuffer> {
+      final AtomicInteger maxOutstanding = new AtomicInteger();
+      final AtomicInteger sent = new AtomicInteger();
+      private final int   chunks;
+
+      CountingPublisher(int chunks) {
+         this.chunks = chunks;
+      }
+
+      String text() {
+         StringBuilder sb = new StringBuilder();
+
+         for (int i = 0; i < chunks; i ++) {
+            sb.append((char) ('a' + i % 26));
+         }
+
+         return sb.toString();
+      }
+
+      public void subscribe(final Flow.Subscriber<? super CharBuffer> s) {
+         final AtomicLong outstanding = new AtomicLong();
+         final Semaphore  wanted = new Semaphore(0);
+
+         Thread thread = new Thread(() -> {
+            try {
+               for (int i = 0; i < chunks; i ++) {
+                  wanted.acquire();
+                  outstanding.decrementAndGet();
+                  sent.incrementAndGet();
+                  s.onNext(CharBuffer.wrap(new char[] {
+                     (char) ('a' + i % 26) }));
+               }
+
+               s.onComplete();
+            } catch(InterruptedException ex) {
+               s.onError(ex);
+            }
+         });
+
+         thread.setDaemon(true);
+         s.onSubscribe(new Flow.Subscription() {
+            public void request(long n) {
+               long now = outstanding.addAndGet(n);
+
+               maxOutstanding.accumulateAndGet((int) now, Math::max);
+               wanted.release((int) n);
+            }
+
+            public void cancel() {
+               thread.interrupt();
+            }
+         });
+         thread.start();
+      }
+   }
+
+   /**
+    * Collector is a slow subscriber that requests one chunk at a time and
+    * records how far upstream has run ahead of it.
+    */
+   private static final class Collector
+         implements Flow.Subscriber<CharBuffer> {
+      final CountDownLatch        done = new CountDownLatch(1);
+      volatile Throwable          error;
+      volatile int                maxLag;
+      private final StringBuffer  sb = new StringBuffer();
+      private final long          delay;
+      private final AtomicInteger sent;    // Chunks upstream has sent.
+      private Flow.Subscription   subscription;
+      private int                 received;
+
+      Collector(long delay, AtomicInteger sent) {
+         this.delay = delay;
+         this.sent = sent;
+      }
+
+      String text() {
+         return sb.toString();
+      }
+
+      public void onSubscribe(Flow.Subscription subscription) {
+         this.subscription = subscription;
+         subscription.request(1);
+      }
+
+      public void onNext(CharBuffer item) {
+         sb.append(item);
+         received ++;
+
+         if (sent != null) {
+            maxLag = Math.max(maxLag, sent.get() - received);
+         }
+
+         try {
+            Thread.sleep(delay);
+         } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+         }
+
+         subscription.request(1);
+      }
+
+      public void onError(Throwable t) {
+         error = t;
+         done.countDown();
+      }
+
+      public void onComplete() {
+         done.countDown();
+      }
+   }
+}